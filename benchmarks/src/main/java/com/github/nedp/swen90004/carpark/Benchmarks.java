@@ -0,0 +1,52 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helpers shared by the benchmarks.
+ */
+final class Benchmarks {
+
+    private Benchmarks() { }
+
+    /**
+     * Starts a background process which repeatedly runs the specified step
+     * until it is interrupted, and returns its thread.
+     */
+    static Thread background(String name, Step step) {
+        final Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    step.run();
+                }
+            } catch (InterruptedException e) {
+                // Stopped at the end of the benchmark.
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /** Interrupts and waits for all of the specified threads. */
+    static void stop(List<Thread> threads) throws InterruptedException {
+        for (final Thread thread : threads) {
+            thread.interrupt();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        threads.clear();
+    }
+
+    /** Returns a new empty list of background threads. */
+    static List<Thread> threads() {
+        return new ArrayList<>();
+    }
+
+    /** A single step of a background process, which may wait. */
+    interface Step {
+        void run() throws InterruptedException;
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures the round-trip latency of Channel#put then Channel#get.
+ *
+ * Each benchmark thread puts a request into one channel and gets a response
+ * from another; a number of background echo threads get requests and put
+ * them back as responses.
+ * Run with {@code -t N} to vary the number of requesting threads, and the
+ * {@code echoes} parameter to vary the number of echoing threads.
+ *
+ * Every request is answered, so no thread is left waiting when an iteration
+ * ends.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChannelBenchmark {
+
+    @org.openjdk.jmh.annotations.Param({"MONITOR", "ATOMIC"})
+    public String channelType;
+
+    @org.openjdk.jmh.annotations.Param({"1", "4"})
+    public int echoes;
+
+    private static final Object ITEM = new Object();
+
+    private Channel<Object> requests;
+    private Channel<Object> responses;
+    private final List<Thread> threads = Benchmarks.threads();
+
+    @Setup
+    public void setUp() {
+        final Scheduler scheduler = new NoDelayScheduler(
+                ThreadScheduler.ChannelType.valueOf(channelType));
+        requests = scheduler.newChannel();
+        responses = scheduler.newChannel();
+        for (int i = 0; i < echoes; i += 1) {
+            threads.add(Benchmarks.background("echo " + i,
+                    () -> responses.put(requests.get())));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        Benchmarks.stop(threads);
+    }
+
+    @Benchmark
+    public Object roundTrip() throws InterruptedException {
+        requests.put(ITEM);
+        return responses.get();
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures a ping-pong between Lift#acquireWhenEmpty and
+ * Lift#acquireWhenFull, with the lift's movement delays stubbed out.
+ *
+ * The benchmark thread acquires the empty lift on level 0 and puts a car in
+ * it for level 1; a background thread acquires the full lift on level 1,
+ * takes the car out, and makes the lift available on level 0 again, so no
+ * operator is needed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LiftBenchmark {
+
+    @org.openjdk.jmh.annotations.Param({"MONITOR", "ATOMIC"})
+    public String channelType;
+
+    private static final Car CAR = Car.getNew();
+
+    private Lift<Car> lift;
+    private final List<Thread> threads = Benchmarks.threads();
+
+    @Setup
+    public void setUp() {
+        final Scheduler scheduler = new NoDelayScheduler(
+                ThreadScheduler.ChannelType.valueOf(channelType));
+        final Properties properties = new Properties();
+        properties.setProperty(Param.OPERATE_TIME, "0");
+        lift = new Lift<>(2, "lift", new Param(properties), scheduler,
+                new Version());
+        threads.add(Benchmarks.background("unloader", () -> {
+            lift.acquireWhenFull(1);
+            lift.getNow();
+            lift.makeAvailable(0);
+        }));
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        Benchmarks.stop(threads);
+    }
+
+    @Benchmark
+    public void pingPong() throws InterruptedException {
+        lift.acquireWhenEmpty(0);
+        lift.put(1, CAR);
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A Scheduler for benchmarks, which provides the channels of a
+ * ThreadScheduler but never delays, so that only synchronisation is measured.
+ *
+ * Processes are started as daemon threads, so that any left waiting at the
+ * end of a benchmark don't prevent the JVM from exiting.
+ * Like a ThreadScheduler, the scheduler terminates when any process dies,
+ * after which every process is interrupted and waited for.
+ *
+ * See the implemented interface for documentation on overridden methods.
+ */
+class NoDelayScheduler implements Scheduler {
+
+    // Provides the channels of this scheduler.
+    private final ThreadScheduler channels;
+
+    // The threads of all started processes.
+    private final List<Thread> threads = Benchmarks.threads();
+
+    // Counted down when the first process dies.
+    private final CountDownLatch died = new CountDownLatch(1);
+
+    /** Constructs a scheduler providing channels of the specified type. */
+    NoDelayScheduler(ThreadScheduler.ChannelType channelType) {
+        channels = new ThreadScheduler(channelType);
+    }
+
+    @Override
+    public long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    @Override
+    public void sleep(long millis) { }
+
+    @Override
+    public <T> Channel<T> newChannel() {
+        return channels.newChannel();
+    }
+
+    @Override
+    public synchronized void start(String name, Runnable process) {
+        // A process which throws is only reported if it is the first to
+        // die, since interrupted processes are expected to throw.
+        final Thread thread = new Thread(() -> {
+            process.run();
+            died.countDown();
+        }, name);
+        thread.setUncaughtExceptionHandler((t, e) -> {
+            if (died.getCount() > 0) {
+                System.err.print("Exception in thread \"" + t.getName()
+                        + "\" ");
+                e.printStackTrace();
+            }
+            died.countDown();
+        });
+        thread.setDaemon(true);
+        threads.add(thread);
+        thread.start();
+    }
+
+    /**
+     * Waits until any process dies, then interrupts every process and waits
+     * for all of their threads to finish.
+     */
+    @Override
+    public void awaitTermination() throws InterruptedException {
+        died.await();
+        // Joined outside the monitor, so that no process waits to start.
+        final List<Thread> started;
+        synchronized (this) {
+            started = new ArrayList<>(threads);
+        }
+        Benchmarks.stop(started);
+    }
+}
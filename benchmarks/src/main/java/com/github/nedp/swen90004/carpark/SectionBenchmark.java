@@ -0,0 +1,71 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures a Section's acquire, put, get and release cycle.
+ *
+ * {@code cycle} runs the whole cycle in the benchmark thread, measuring the
+ * uncontended cost of the section's channels.
+ * {@code handoff} only fills the section, while a background vehicle empties
+ * it, measuring the cost of handing a car between two threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SectionBenchmark {
+
+    @org.openjdk.jmh.annotations.Param({"MONITOR", "ATOMIC"})
+    public String channelType;
+
+    private static final Car CAR = Car.getNew();
+
+    private Section cycled;
+    private Section handedOff;
+    private final List<Thread> threads = Benchmarks.threads();
+
+    @Setup
+    public void setUp() {
+        Logger.setLogType(Logger.LogType.NONE);
+        final Scheduler scheduler = new NoDelayScheduler(
+                ThreadScheduler.ChannelType.valueOf(channelType));
+        cycled = new Section(0, scheduler);
+        handedOff = new Section(1, scheduler);
+        threads.add(Benchmarks.background("downstream", () -> {
+            handedOff.acquireWhenFull();
+            handedOff.getNow();
+            handedOff.makeAvailable();
+        }));
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        Benchmarks.stop(threads);
+    }
+
+    @Benchmark
+    public Car cycle() throws InterruptedException {
+        cycled.acquireWhenEmpty();
+        cycled.put(CAR);
+        cycled.acquireWhenFull();
+        final Car car = cycled.getNow();
+        cycled.makeAvailable();
+        return car;
+    }
+
+    @Benchmark
+    public void handoff() throws InterruptedException {
+        handedOff.acquireWhenEmpty();
+        handedOff.put(CAR);
+    }
+}
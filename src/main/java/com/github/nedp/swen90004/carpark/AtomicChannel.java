@@ -0,0 +1,113 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free implementation of Channel for real threads.
+ *
+ * The channel's state is a single atomic word which is changed by
+ * compare-and-set; no monitor is ever held.
+ * Threads which must wait park themselves, and each state transition unparks
+ * at most one waiter which can make progress from the new state, rather than
+ * waking every waiter like MonitorChannel does.
+ *
+ * A woken waiter may still lose the race for the new state to a thread which
+ * never waited, in which case it simply waits again; whichever thread wins
+ * the race performs the next transition and wakes the next waiter, so no
+ * wake up is lost.
+ *
+ * See the implemented interface for documentation on overridden methods.
+ */
+class AtomicChannel<T> implements Channel<T> {
+
+    // The states of the channel.
+    // BUSY means that a thread is between claiming the channel and publishing
+    // its new state; it is considered neither empty nor full.
+    private static final int EMPTY = 0;
+    private static final int FULL = 1;
+    private static final int BUSY = 2;
+
+    private final AtomicInteger state = new AtomicInteger(EMPTY);
+
+    // The item most recently sent through this channel.
+    // Written only while BUSY, and published by the following write to
+    // state, so it needs no synchronisation of its own.
+    private T item = null;
+
+    // Threads waiting for the channel to be full and empty respectively.
+    private final Queue<Thread> getters = new ConcurrentLinkedQueue<>();
+    private final Queue<Thread> putters = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public T get() throws InterruptedException {
+        while (true) {
+            final Optional<T> item = getIfReady();
+            if (item.isPresent()) return item.get();
+            await(getters, FULL);
+        }
+    }
+
+    @Override
+    public void put(T item) throws InterruptedException {
+        while (!state.compareAndSet(EMPTY, BUSY)) {
+            await(putters, EMPTY);
+        }
+        this.item = item;
+        state.set(FULL);
+        signal(getters);
+    }
+
+    @Override
+    public boolean putIfEmpty(T item) {
+        if (!state.compareAndSet(EMPTY, BUSY)) return false;
+        this.item = item;
+        state.set(FULL);
+        signal(getters);
+        return true;
+    }
+
+    @Override
+    public Optional<T> getIfReady() {
+        if (!state.compareAndSet(FULL, BUSY)) return Optional.empty();
+        final T item = this.item;
+        this.item = null;
+        state.set(EMPTY);
+        signal(putters);
+        return Optional.of(item);
+    }
+
+    // Parks the calling thread in the specified queue unless the channel is
+    // already in the awaited state.
+    // May return spuriously; the caller is responsible for checking again.
+    private void await(Queue<Thread> waiters, int awaited)
+            throws InterruptedException {
+        final Thread self = Thread.currentThread();
+        waiters.add(self);
+
+        // The state may have changed before we were queued, in which case
+        // its transition may not have seen us; don't park.
+        if (state.get() != awaited) {
+            LockSupport.park(this);
+        }
+        waiters.remove(self);
+
+        if (Thread.interrupted()) {
+            // We may have been chosen by a transition to the awaited state;
+            // pass the wake up on so that it isn't lost.
+            if (state.get() == awaited) signal(waiters);
+            throw new InterruptedException();
+        }
+    }
+
+    // Wakes at most one thread from the specified queue.
+    private static void signal(Queue<Thread> waiters) {
+        final Thread waiter = waiters.poll();
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+}
@@ -1,31 +1,105 @@
 package com.github.nedp.swen90004.carpark;
 
+import java.util.Arrays;
+
 /**
  * A class whose instances are cars, each with its unique ID.
  *
+ * A car may also carry the times at which it entered each stage of its
+ * journey through the car park, so its sojourn can be measured when it
+ * departs; see Sojourns.
+ * The stages are stamped by whichever resource the car is entering, which
+ * is always the car's only owner, and cars are handed between owners
+ * through channels, so the stamps need no locks.
+ *
  * See implemented interfaces and superclasses for documentation on overridden
  * methods.
  */
 class Car {
 
+    // The number of stages for which space is initially allocated.
+    private static final int INITIAL_STAGES = 16;
+
     // The ID of this car.
-    private final int id;
+    private final long id;
+
+    // Allocates the IDs of cars which aren't given one; see #getNew().
+    private static final CarIds IDS = new CarIds();
 
-    // The ID to be allocated to the next car.
-    private static int nextId = 0;
+    // The clock by which stages are stamped, or null if they aren't.
+    private final Scheduler clock;
+
+    // The times at which the car entered each stage of its journey, in
+    // order, and the number of stages it has entered.
+    private long[] stamps;
+    private int nStamps = 0;
 
     // Create a new car with a given ID.
-    private Car(int id) {
+    private Car(long id, Scheduler clock) {
         this.id = id;
+        this.clock = clock;
+        this.stamps = (clock == null) ? new long[0] : new long[INITIAL_STAGES];
     }
 
-    // Get a new car instance with a unique ID.
+    // Get a new car instance with a unique ID, whose stages aren't stamped.
+    // Its ID is unique among cars created by this method, but not among
+    // cars whose IDs come from elsewhere.
     static Car getNew() {
-        final Car car = new Car(nextId);
-        nextId += 1;
+        return new Car(IDS.next(), null);
+    }
+
+    /**
+     * Returns a new car with the next ID from the specified generator,
+     * whose stages are stamped by the specified clock, starting with its
+     * arrival now.
+     *
+     * @param clock the clock by which stages are stamped, or null if they
+     *              should not be.
+     */
+    static Car getNew(CarIds.Generator ids, Scheduler clock) {
+        final Car car = new Car(ids.next(), clock);
+        car.stamp();
         return car;
     }
 
+    /** Returns the unique ID of this car. */
+    long id() {
+        return id;
+    }
+
+    /**
+     * Records that the car is entering the next stage of its journey now,
+     * if its stages are stamped.
+     *
+     * Must only be called by the car's owner.
+     */
+    void stamp() {
+        if (clock == null) return;
+        if (nStamps == stamps.length) {
+            stamps = Arrays.copyOf(stamps, 2 * stamps.length);
+        }
+        stamps[nStamps] = clock.nanoTime();
+        nStamps += 1;
+    }
+
+    /** Returns the number of stages the car has entered. */
+    int stages() {
+        return nStamps;
+    }
+
+    /**
+     * Returns the time at which the car entered the specified stage,
+     * according to Scheduler#nanoTime.
+     *
+     * @param stage the stage, where the car's arrival is stage 0.
+     */
+    long stamp(int stage) {
+        if (stage >= nStamps) {
+            throw new IndexOutOfBoundsException("stage " + stage);
+        }
+        return stamps[stage];
+    }
+
     @Override
     public String toString() {
         return String.format("[%d]", id);
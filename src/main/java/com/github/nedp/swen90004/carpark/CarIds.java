@@ -0,0 +1,61 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocates unique 64-bit car ids for a single simulation.
+ *
+ * Ids may be allocated one at a time with {@link #next()}, which is
+ * thread-safe, but every call contends on the same counter.
+ * Sources of cars such as entrances should instead each use their own
+ * {@link Generator}, which reserves ids from the allocator a block at a
+ * time, so that the shared counter is only touched once per block.
+ *
+ * A single generator allocates consecutive ids within each block, so with
+ * one generator, ids are allocated in order from 0.
+ */
+class CarIds {
+
+    /** The number of ids reserved by a generator at a time. */
+    static final int BLOCK_SIZE = 1024;
+
+    // The next id which has not been allocated or reserved.
+    private final AtomicLong next = new AtomicLong(0);
+
+    /** Allocates a single id. */
+    long next() {
+        return next.getAndIncrement();
+    }
+
+    /** Returns a new generator which reserves ids from this allocator. */
+    Generator generator() {
+        return new Generator();
+    }
+
+    /**
+     * Allocates ids from blocks reserved from a CarIds.
+     *
+     * A generator is not thread-safe; it must only be used by one thread at
+     * a time, like the resource which owns it.
+     */
+    final class Generator {
+
+        // The next id in the current block, and the end of the block.
+        private long next = 0;
+        private long end = 0;
+
+        private Generator() {
+        }
+
+        /** Allocates a single id. */
+        long next() {
+            if (next == end) {
+                next = CarIds.this.next.getAndAdd(BLOCK_SIZE);
+                end = next + BLOCK_SIZE;
+            }
+            final long id = next;
+            next += 1;
+            return id;
+        }
+    }
+}
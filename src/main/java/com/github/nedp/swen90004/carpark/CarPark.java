@@ -0,0 +1,216 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The components of a car park, as wired together by a Topology.
+ *
+ * Cars arrive at the entrances on the ground level, are raised by the lift
+ * to the first level of their route, pass through that level's chain of
+ * sections, are moved by the lift to the next level of the route, and so on
+ * until they are lowered from the last level of the route to the exits.
+ *
+ * Responsible for starting the processes of the car park and drawing its
+ * state.
+ */
+class CarPark {
+
+    // Controls the passage of time and the execution of processes.
+    private final Scheduler scheduler;
+
+    // The lift shared by all levels, and the processes which operate it,
+    // by name.
+    private final Elevator<Car> lift;
+    private final Map<String, Runnable> operators;
+
+    // The processes of the vehicles of the fleet, by name, if the hops
+    // between sections share a Fleet.
+    private final Map<String, Runnable> fleet;
+
+    // The entrances of the carpark, the vehicles which tow cars from each
+    // entrance into the lift, and the vehicles which tow cars from the lift
+    // to each exit.
+    private final List<Entrance> entrances;
+    private final List<Vehicle<Car>> arrivals;
+    private final List<Vehicle<Car>> departures;
+
+    // The upper levels of the car park, in the order cars visit them.
+    private final List<Level> levels;
+
+    // The version of the observable state of the components, and the number
+    // of times to try to take a consistent snapshot of it.
+    private final Version version;
+    private static final int MAX_ATTEMPTS = 64;
+
+    /**
+     * The sections and towing vehicles of a single upper level.
+     *
+     * The vehicles are in the order they tow cars: the first launches cars
+     * from the lift into the first section, and each subsequent vehicle tows
+     * cars out of the corresponding section.
+     * If the level's hops between sections are served by a Fleet, its only
+     * vehicles are the first and the last, and the hops are in between.
+     */
+    static final class Level {
+        final int index;
+        final List<Space> sections;
+        final List<Vehicle<Car>> vehicles;
+        final List<Fleet.Hop> hops;
+
+        Level(int index,
+              List<Space> sections,
+              List<Vehicle<Car>> vehicles,
+              List<Fleet.Hop> hops) {
+            this.index = index;
+            this.sections = Collections.unmodifiableList(sections);
+            this.vehicles = Collections.unmodifiableList(vehicles);
+            this.hops = Collections.unmodifiableList(hops);
+        }
+    }
+
+    // Constructs a car park from components which have already been wired
+    // together; see Topology#build.
+    CarPark(Scheduler scheduler,
+            Elevator<Car> lift,
+            Map<String, Runnable> operators,
+            Map<String, Runnable> fleet,
+            List<Entrance> entrances,
+            List<Vehicle<Car>> arrivals,
+            List<Vehicle<Car>> departures,
+            List<Level> levels,
+            Version version) {
+        this.scheduler = scheduler;
+        this.lift = lift;
+        this.operators = Collections.unmodifiableMap(
+                new LinkedHashMap<>(operators));
+        this.fleet = Collections.unmodifiableMap(new LinkedHashMap<>(fleet));
+        this.entrances = Collections.unmodifiableList(entrances);
+        this.arrivals = Collections.unmodifiableList(arrivals);
+        this.departures = Collections.unmodifiableList(departures);
+        this.levels = Collections.unmodifiableList(levels);
+        this.version = version;
+    }
+
+    /** Returns all of the towing vehicles in the car park. */
+    List<Vehicle<Car>> vehicles() {
+        final List<Vehicle<Car>> vehicles = new ArrayList<>();
+        vehicles.addAll(arrivals);
+        for (final Level level : levels) {
+            vehicles.addAll(level.vehicles);
+        }
+        vehicles.addAll(departures);
+        return vehicles;
+    }
+
+    /**
+     * Starts up all the vehicles, the fleet if there is one, and the
+     * operators of the lift.
+     */
+    void start() {
+        for (final Vehicle<Car> vehicle : vehicles()) {
+            scheduler.start("vehicle " + vehicle, vehicle);
+        }
+        for (final Map.Entry<String, Runnable> vehicle : fleet.entrySet()) {
+            scheduler.start(vehicle.getKey(), vehicle.getValue());
+        }
+        for (final Map.Entry<String, Runnable> operator
+                : operators.entrySet()) {
+            scheduler.start(operator.getKey(), operator.getValue());
+        }
+    }
+
+    /**
+     * Returns a snapshot of where every car is.
+     *
+     * The snapshot is taken without locking, and without stalling the
+     * processes of the car park: if the observable state changes while it
+     * is being taken, it is taken again, up to a limit, after which an
+     * inconsistent snapshot is returned.
+     * May be called from any thread.
+     */
+    Snapshot snapshot() {
+        Snapshot snapshot = null;
+        for (int i = 0; i < MAX_ATTEMPTS; i += 1) {
+            final long version = this.version.read();
+            if (version >= 0) {
+                snapshot = capture(version);
+                if (this.version.validate(version)) return snapshot;
+            }
+            Thread.yield();
+        }
+        return (snapshot != null) ? snapshot : capture(-1);
+    }
+
+    // Reads the observable state of every component into a snapshot,
+    // labelled with the specified version.
+    private Snapshot capture(long version) {
+        final List<Snapshot.Cabin> cabins = new ArrayList<>(lift.cabins());
+        for (int i = 0; i < lift.cabins(); i += 1) {
+            cabins.add(new Snapshot.Cabin(
+                    lift.name(i), lift.level(i), lift.items(i)));
+        }
+        final List<Snapshot.Level> levels = new ArrayList<>(this.levels.size());
+        for (final Level level : this.levels) {
+            final List<List<Snapshot.Place>> sections =
+                    new ArrayList<>(level.sections.size());
+            for (final Space section : level.sections) {
+                final List<Snapshot.Place> bays =
+                        new ArrayList<>(section.capacity());
+                for (int i = 0; i < section.capacity(); i += 1) {
+                    bays.add(new Snapshot.Place(
+                            bay(section, i), section.car(i)));
+                }
+                sections.add(bays);
+            }
+            levels.add(new Snapshot.Level(level.index, sections,
+                    places(level.vehicles, level.hops)));
+        }
+        final List<Snapshot.Place> entrances =
+                new ArrayList<>(this.entrances.size());
+        for (final Entrance entrance : this.entrances) {
+            entrances.add(new Snapshot.Place(
+                    entrance.toString(), entrance.car()));
+        }
+        return new Snapshot(scheduler.now(), version, cabins, levels,
+                entrances, places(arrivals), places(departures));
+    }
+
+    // Returns the name of the specified bay of a section, which is the id
+    // of the section, suffixed by the bay if the section has several.
+    private static String bay(Space section, int bay) {
+        return (section.capacity() == 1) ? Integer.toString(section.id())
+                : String.format("%d.%d", section.id(), bay);
+    }
+
+    // Returns the state of each of the vehicles of a level, in the order
+    // they tow cars, with the hops of the fleet between its first and last
+    // vehicles.
+    private static List<Snapshot.Place> places(List<Vehicle<Car>> vehicles,
+                                               List<Fleet.Hop> hops) {
+        if (hops.isEmpty()) return places(vehicles);
+        final List<Snapshot.Place> places = places(vehicles.subList(0, 1));
+        for (final Fleet.Hop hop : hops) {
+            places.add(new Snapshot.Place(hop.toString(), hop.item()));
+        }
+        places.addAll(places(vehicles.subList(1, vehicles.size())));
+        return places;
+    }
+
+    // Returns the state of each of the specified vehicles.
+    private static List<Snapshot.Place> places(List<Vehicle<Car>> vehicles) {
+        final List<Snapshot.Place> places = new ArrayList<>(vehicles.size());
+        for (final Vehicle<Car> vehicle : vehicles) {
+            places.add(new Snapshot.Place(vehicle.toString(), vehicle.item()));
+        }
+        return places;
+    }
+
+    /** Draws the state of every level, from the top down. */
+    void draw() {
+        Logger.logState("%s", snapshot().draw());
+    }
+}
@@ -15,21 +15,18 @@ import java.util.Optional;
  * </li>
  * <li>checking if the channel is currently full and receiving its item if so
  * </li>
+ * <li>checking if the channel is currently empty and sending an item if so
+ * </li>
  * </ul>
  *
- * These operations are all synchronised on the channel itself.
- *
  * Only one item may be sent through the channel at a time.
  * Subsequent sends must wait until the first item is retrieved.
  * Every item sent through the channel may be retrieved at most once.
+ *
+ * Channels should be obtained from {@link Scheduler#newChannel()}, so that
+ * their waiting is consistent with the scheduler's notion of time.
  */
-class Channel<T> {
-
-    // true if this Channel currently has an item, otherwise false.
-    private boolean isFull = false;
-
-    // The item most recently sent through this channel.
-    private T item = null;
+interface Channel<T> {
 
     /**
      * Waits until an item is available for retrieval from this Channel,
@@ -41,14 +38,7 @@ class Channel<T> {
      *
      * @return the first item available for retrieval.
      */
-    synchronized T get() throws InterruptedException {
-        while (!isFull) {
-            wait();
-        }
-        isFull = false;
-        notifyAll();
-        return item;
-    }
+    T get() throws InterruptedException;
 
     /**
      * Sends an item through this Channel when the channel has space
@@ -58,14 +48,7 @@ class Channel<T> {
      * channel is no longer full, then send the item.
      * Otherwise, this method will immediately send the item.
      */
-    synchronized void put(T item) throws InterruptedException {
-        while (isFull) {
-            wait();
-        }
-        this.item = item;
-        isFull = true;
-        notifyAll();
-    }
+    void put(T item) throws InterruptedException;
 
     /**
      * Attempts to retrieve an item from this Channel without waiting.
@@ -76,12 +59,15 @@ class Channel<T> {
      * @return Optional.of(item) if an item is ready,
      * otherwise Optional.empty()
      */
-    synchronized Optional<T> getIfReady() {
-        if (isFull) {
-            isFull = false;
-            return Optional.of(item);
-        } else {
-            return Optional.empty();
-        }
-    }
+    Optional<T> getIfReady();
+
+    /**
+     * Attempts to send an item through this Channel without waiting.
+     *
+     * If the channel is empty, the item is sent.
+     * Otherwise, the item is not sent and false is returned immediately.
+     *
+     * @return true if the item was sent, otherwise false.
+     */
+    boolean putIfEmpty(T item);
 }
@@ -0,0 +1,99 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.util.List;
+
+/**
+ * An interface for anything which carries items between levels in one or
+ * more cabins, such as a single Lift or a LiftBank.
+ *
+ * A caller takes ownership of a cabin at a level, either when it is empty or
+ * when it is full, and then refers to that cabin by the index returned when it
+ * took ownership.
+ *
+ * The interface is generic because it can be for free, but in the swen90004
+ * carpark simulation, T is always Car.
+ */
+interface Elevator<T> {
+
+    /**
+     * Waits until a cabin is available and empty at the specified level,
+     * then takes ownership of it.
+     *
+     * Only one caller may take ownership of a cabin at a time.
+     *
+     * @param level the level at which the cabin must be.
+     * @return the index of the cabin which the caller now owns.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    int acquireCabinWhenEmpty(int level) throws InterruptedException;
+
+    /**
+     * Puts the specified item into the specified cabin, to be carried to the
+     * specified level, relinquishing ownership of the cabin.
+     *
+     * The caller must own the cabin, and it must be empty.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting;
+     * if ownership is respected, this method should never wait.
+     */
+    void put(int cabin, int level, T item) throws InterruptedException;
+
+    /**
+     * Waits until a cabin has an item going to the specified level, and has
+     * arrived at that level, then takes ownership of it without retrieving
+     * the item.
+     *
+     * Only one caller may take ownership of a cabin at a time.
+     *
+     * @return the index of the cabin which the caller now owns.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    int acquireCabinWhenFull(int level) throws InterruptedException;
+
+    /**
+     * Retrieves the item from the specified cabin, which the caller must own.
+     *
+     * The item is taken out of the cabin by this method, but ownership is
+     * not relinquished.
+     * If the cabin carries several items (see Param#liftCapacity), they are
+     * retrieved in the order they were put in.
+     *
+     * @return the item in the cabin.
+     */
+    T getNow(int cabin);
+
+    /**
+     * Makes the specified empty cabin available at the specified level,
+     * relinquishing ownership of it.
+     *
+     * If the cabin still carries items for other callers to retrieve, it
+     * only becomes available once the last of them has done so.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting;
+     * if ownership is respected, this method should never wait.
+     */
+    void makeAvailable(int cabin, int level) throws InterruptedException;
+
+    /** Returns the number of cabins. */
+    int cabins();
+
+    /** Returns a human readable identifier for the specified cabin. */
+    String name(int cabin);
+
+    /**
+     * Returns the level at which the specified cabin last stopped.
+     *
+     * This is observable state, which may be read by any thread; see
+     * Version.
+     */
+    int level(int cabin);
+
+    /**
+     * Returns the items in the specified cabin, in the order they will be
+     * retrieved, which is empty if the cabin is empty.
+     *
+     * This is observable state, which may be read by any thread; see
+     * Version.
+     */
+    List<T> items(int cabin);
+}
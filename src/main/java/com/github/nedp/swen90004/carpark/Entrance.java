@@ -1,31 +1,91 @@
 package com.github.nedp.swen90004.carpark;
 
-import static java.lang.Thread.sleep;
-
 /**
  * An implementation of ResourceExit but not ResourceEntry for Cars,
  * which acts as the entrance of the carpark.
  *
  * Cars may exit this Entrance like a normal resource, but never enter it.
- * Instead, when the Entrance is made available, it waits a randomised amount
- * of time before generating its own car.
+ * Instead, when the Entrance is made available, it waits an amount of time
+ * determined by its arrival process (see Param#arrivals(int)) before
+ * generating its own car.
+ *
+ * A car park may have several entrances, each with its own index and its own
+ * arrival process.
  *
  * See the implemented interface for documentation on overridden methods.
  */
 class Entrance implements ResourceExit<Car> {
 
+    // The level of the entrance.
+    private static final int GROUND = 0;
+
+    // The index of the entrance, and whether it is one of several.
+    private final int index;
+    private final boolean isOneOfSeveral;
+
+    // Determines the delay between the arrival of new cars.
+    private final Lapses lapses;
+
+    // Used for delaying the arrival of new cars.
+    private final Scheduler scheduler;
+
+    // The time at which the entrance was constructed, from which the arrival
+    // process measures time.
+    private final long start;
+
+    // Allocates the IDs of new cars.
+    private final CarIds.Generator ids;
+
     // Used for signaling that the Entrance has a new car ready for retrieval.
-    private final Channel<Car> ready = new Channel<>();
+    private final Channel<Car> ready;
+
+    // Versions the observable state of the car park, which the entrance
+    // changes whenever it generates a car.
+    private final Version version;
 
     // Used for tracking the 'state' of the entrance; since channels don't allow
     // observation of their contents without retrieving it, this variable is
-    // required to allow the printing of state.
+    // required to allow the observation of state.
     // Cars are stored in this variable when they are generated by #getNewCar
-    // and removed from this variable when they are gotten from the section.
-    private Car car;
+    // and removed from this variable when they are gotten from the section,
+    // by a vehicle which is changing the observable state.
+    private volatile Car car;
 
-    /** Constructs a new Entrance with its first car. */
-    Entrance() {
+    /**
+     * Constructs the only Entrance of a car park, with its first car.
+     *
+     * @param ids the generator of the IDs of the entrance's cars, which is
+     *            then owned by the entrance.
+     * @param version the version of the observable state of the car park.
+     */
+    Entrance(Param param,
+             Scheduler scheduler,
+             CarIds.Generator ids,
+             Version version) {
+        this(0, param, scheduler, ids, version);
+    }
+
+    /**
+     * Constructs the Entrance with the specified index, with its first car.
+     *
+     * @param index the index of the entrance, from 0 to Param#entrances - 1.
+     * @param ids the generator of the IDs of the entrance's cars, which is
+     *            then owned by the entrance.
+     * @param version the version of the observable state of the car park.
+     */
+    Entrance(int index,
+             Param param,
+             Scheduler scheduler,
+             CarIds.Generator ids,
+             Version version) {
+        this.index = index;
+        this.isOneOfSeveral = param.entrances > 1;
+        this.lapses = param.arrivals(index);
+        this.scheduler = scheduler;
+        this.start = scheduler.now();
+        this.ids = ids;
+        this.version = version;
+        this.ready = scheduler.newChannel();
         try {
             getNewCar();
         } catch (InterruptedException e) {
@@ -35,7 +95,7 @@ class Entrance implements ResourceExit<Car> {
 
     @Override
     public void makeAvailable() throws InterruptedException {
-        sleep(Param.arrivalLapse());
+        scheduler.sleep(lapses.next(scheduler.now() - start));
         getNewCar();
     }
 
@@ -43,6 +103,7 @@ class Entrance implements ResourceExit<Car> {
     public Car getNow() {
         final Car car = this.car;
         this.car = null;
+        Trace.record(Trace.Event.LEAVE_ENTRANCE, car, GROUND, index);
         return car;
     }
 
@@ -54,13 +115,31 @@ class Entrance implements ResourceExit<Car> {
     // Generates a new car and stores it in the Entrance, using the
     // ready channel to signal that the car is available.
     private void getNewCar() throws InterruptedException {
-        car = Car.getNew();
+        version.beginWrite();
+        car = Car.getNew(ids, scheduler);
+        version.endWrite();
         Logger.logEvent("%s arrives", car);
+        Trace.record(Trace.Event.ARRIVE, car, GROUND, index);
         ready.put(car);
     }
 
-    /** Returns a human readable representation of this entrance's state. */
-    String state() {
-        return String.format("{entrance:%6s}", car);
+    /** Returns the index of this entrance. */
+    int index() {
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return isOneOfSeveral ? "entrance " + index : "entrance";
+    }
+
+    /**
+     * Returns the car waiting in this entrance, or null if there isn't one.
+     *
+     * This is observable state, which may be read by any thread; see
+     * Version.
+     */
+    Car car() {
+        return car;
     }
 }
@@ -0,0 +1,283 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A discrete-event Scheduler which runs processes against a virtual clock.
+ *
+ * Each process still runs in its own thread, but only one process may run at
+ * a time: the running process keeps running until it sleeps or waits on a
+ * Channel, at which point it suspends itself and hands control to the process
+ * with the earliest pending event.
+ * Time only advances when an event is dispatched, so sleeping costs no real
+ * time and days of simulated traffic can be run in seconds.
+ *
+ * Events which occur at the same time are dispatched in the order they were
+ * scheduled, so given the same seed for Param, the event trace of a
+ * simulation is always the same.
+ *
+ * The simulation finishes when the duration has elapsed, when a process dies,
+ * or when no process can make progress (a deadlock).
+ *
+ * See the implemented interface for documentation on overridden methods.
+ */
+class EventScheduler implements Scheduler {
+
+    // The amount of simulated time after which the simulation finishes.
+    private final long duration;
+
+    // The current simulated time.
+    // Only accessed by the running process, and handed between processes
+    // via their semaphores, so it needs no further synchronisation.
+    private long now = 0;
+
+    // Pending events, ordered by time, then by the order they were scheduled.
+    private final Queue<Event> events = new PriorityQueue<>();
+    private long nextSequence = 0;
+
+    // The process which is currently allowed to run.
+    private Process current = null;
+
+    // All started processes.
+    private final List<Process> processes = new ArrayList<>();
+
+    // Counted down once when the simulation finishes.
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    /**
+     * Constructs a new EventScheduler which runs for the specified amount of
+     * simulated time.
+     *
+     * @param duration the number of simulated milliseconds to run for.
+     */
+    EventScheduler(long duration) {
+        this.duration = duration;
+    }
+
+    @Override
+    public long now() {
+        return now;
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        final Process process = running();
+        schedule(now + millis, process);
+        suspend(process);
+    }
+
+    @Override
+    public <T> Channel<T> newChannel() {
+        return new EventChannel<>();
+    }
+
+    /**
+     * Starts a new process with the specified name.
+     *
+     * The process does not run until its first event is dispatched, which
+     * is at the current simulated time.
+     * All processes must be started before calling awaitTermination.
+     */
+    @Override
+    public void start(String name, Runnable process) {
+        final Process p = new Process(name, process);
+        processes.add(p);
+        schedule(now, p);
+        p.thread.start();
+    }
+
+    /**
+     * Dispatches the first event, then waits until the simulation has
+     * finished, and stops all of its processes.
+     */
+    @Override
+    public void awaitTermination() throws InterruptedException {
+        dispatch();
+        try {
+            finished.await();
+        } finally {
+            for (final Process process : processes) {
+                process.thread.interrupt();
+            }
+        }
+    }
+
+    // Returns the running process, checking that it belongs to the caller.
+    private Process running() {
+        if (current == null || current.thread != Thread.currentThread()) {
+            throw new IllegalStateException(
+                    "only the running process may wait");
+        }
+        return current;
+    }
+
+    // Schedules the specified process to resume at the specified time.
+    private void schedule(long time, Process process) {
+        events.add(new Event(time, nextSequence, process));
+        nextSequence += 1;
+    }
+
+    // Hands control to the next process, then waits until the specified
+    // process is resumed.
+    private void suspend(Process process) throws InterruptedException {
+        dispatch();
+        process.turn.acquire();
+    }
+
+    // Resumes the process with the earliest event, or finishes the simulation
+    // if there are no more events to dispatch before the duration elapses.
+    private void dispatch() {
+        final Event event = events.poll();
+        if (event == null) {
+            Logger.logEvent("Simulation deadlocked at %d ms", now);
+            finish();
+        } else if (event.time > duration) {
+            now = duration;
+            finish();
+        } else {
+            now = event.time;
+            current = event.process;
+            current.turn.release();
+        }
+    }
+
+    // Marks the simulation as finished and releases the waiting caller.
+    private void finish() {
+        current = null;
+        finished.countDown();
+    }
+
+    // Returns true if the simulation has finished.
+    private boolean isFinished() {
+        return finished.getCount() == 0;
+    }
+
+    // A pending resumption of a process at a specific time.
+    private static final class Event implements Comparable<Event> {
+        private final long time;
+        private final long sequence;
+        private final Process process;
+
+        private Event(long time, long sequence, Process process) {
+            this.time = time;
+            this.sequence = sequence;
+            this.process = process;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            if (time != other.time) return Long.compare(time, other.time);
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    // A process backed by its own thread, which only runs while holding its
+    // turn.
+    private final class Process {
+        private final Thread thread;
+        private final Semaphore turn = new Semaphore(0);
+
+        private Process(String name, Runnable body) {
+            thread = new Thread(() -> {
+                try {
+                    turn.acquire();
+                    body.run();
+                } catch (InterruptedException e) {
+                    // Only interrupted when the simulation has finished.
+                    return;
+                } catch (RuntimeException e) {
+                    // Processes are interrupted when the simulation finishes,
+                    // which is not a failure.
+                    if (isFinished()) return;
+                    throw e;
+                } finally {
+                    // Any process dying ends the simulation.
+                    if (!isFinished()) finish();
+                }
+            }, name);
+            thread.setDaemon(true);
+        }
+    }
+
+    /**
+     * A Channel whose waiting suspends the running process rather than
+     * blocking its thread, so that other processes may run.
+     *
+     * Since only one process runs at a time, no locking is required.
+     *
+     * See the implemented interface for documentation on overridden methods.
+     */
+    private final class EventChannel<T> implements Channel<T> {
+
+        // true if this Channel currently has an item, otherwise false.
+        private boolean isFull = false;
+
+        // The item most recently sent through this channel.
+        private T item = null;
+
+        // The processes waiting for this channel to change state.
+        private final Queue<Process> waiters = new ArrayDeque<>();
+
+        @Override
+        public T get() throws InterruptedException {
+            while (!isFull) {
+                await();
+            }
+            isFull = false;
+            notifyWaiters();
+            return item;
+        }
+
+        @Override
+        public void put(T item) throws InterruptedException {
+            while (isFull) {
+                await();
+            }
+            this.item = item;
+            isFull = true;
+            notifyWaiters();
+        }
+
+        @Override
+        public Optional<T> getIfReady() {
+            if (isFull) {
+                isFull = false;
+                notifyWaiters();
+                return Optional.of(item);
+            } else {
+                return Optional.empty();
+            }
+        }
+
+        @Override
+        public boolean putIfEmpty(T item) {
+            if (isFull) return false;
+            this.item = item;
+            isFull = true;
+            notifyWaiters();
+            return true;
+        }
+
+        // Suspends the running process until the channel changes state.
+        private void await() throws InterruptedException {
+            final Process process = running();
+            waiters.add(process);
+            suspend(process);
+        }
+
+        // Schedules all waiting processes to resume at the current time,
+        // in the order they started waiting.
+        private void notifyWaiters() {
+            while (!waiters.isEmpty()) {
+                schedule(now, waiters.remove());
+            }
+        }
+    }
+}
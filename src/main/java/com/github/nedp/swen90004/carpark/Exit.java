@@ -1,28 +1,82 @@
 package com.github.nedp.swen90004.carpark;
 
-import static java.lang.Thread.sleep;
-
 /**
  * An implementation of ResourceEntry but not ResourceExit for Cars,
  * which acts as the exit of the carpark.
  *
  * Cars may enter this Exit like a normal resource, but never exit it.
  * Instead, cars which enter this exit are immediately destroyed.
- * When taking ownership of this exit, a random amount of time is
- * waited, determined by Param.departureLapse().
+ * When taking ownership of this exit, an amount of time is waited,
+ * determined by its departure process (see Param#departures(int)).
+ *
+ * A car park may have several exits, each with its own index and its own
+ * departure process.
  *
  * This Exit has no state, since Cars are considered to have left the car park
  * as soon as they are towed from the lift.
  *
  * See the implemented interface for documentation on overridden methods.
  */
-class Exit<T> implements ResourceEntry<T> {
+class Exit implements ResourceEntry<Car> {
+
+    // The level of the exit.
+    private static final int GROUND = 0;
+
+    // The index of the exit, and whether it is one of several.
+    private final int index;
+    private final boolean isOneOfSeveral;
+
+    // Determines the delay between the departure of cars.
+    private final Lapses lapses;
+
+    // Used for delaying the departure of cars.
+    private final Scheduler scheduler;
+
+    // The time at which the exit was constructed, from which the departure
+    // process measures time.
+    private final long start;
+
+    // Aggregates the sojourns of departing cars, or null if they aren't.
+    private final Sojourns sojourns;
+
+    /** Constructs a new Exit which waits using the specified scheduler. */
+    Exit(Param param, Scheduler scheduler) {
+        this(0, param, scheduler, null);
+    }
+
+    /**
+     * Constructs a new Exit which waits using the specified scheduler and
+     * records the sojourn of each departing car.
+     *
+     * @param index the index of the exit, from 0 to Param#exits - 1.
+     * @param sojourns the aggregator of sojourns, or null if they should not
+     *                 be recorded.
+     */
+    Exit(int index, Param param, Scheduler scheduler, Sojourns sojourns) {
+        this.index = index;
+        this.isOneOfSeveral = param.exits > 1;
+        this.lapses = param.departures(index);
+        this.scheduler = scheduler;
+        this.start = scheduler.now();
+        this.sojourns = sojourns;
+    }
 
     @Override
     public void acquireWhenEmpty() throws InterruptedException {
-        sleep(Param.departureLapse());
+        scheduler.sleep(lapses.next(scheduler.now() - start));
     }
 
     @Override
-    public void put(T item) throws InterruptedException { }
+    public String toString() {
+        return isOneOfSeveral ? "exit " + index : "exit";
+    }
+
+    @Override
+    public void put(Car item) throws InterruptedException {
+        item.stamp();
+        Trace.record(Trace.Event.DEPART, item, GROUND, index);
+        if (sojourns != null) {
+            sojourns.record(item);
+        }
+    }
 }
@@ -0,0 +1,789 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A tool which checks that a car park can't deadlock, by exhaustively
+ * exploring the interleavings of its processes up to a bound, like the LTSA
+ * models in lift.lts and lift_fixed.lts at the root of the repository, but
+ * running the Java implementation of the protocol (Lift, Section, Lane,
+ * GuardedLiftResource, Vehicle, and so on) for any configuration.
+ *
+ * Responsible for:
+ * <ul>
+ *     <li>running a car park under a deterministic, untimed scheduler, which
+ *     lets exactly one process take a step at a time, in a chosen order</li>
+ *     <li>replaying a schedule of choices, then extending it, and handing
+ *     each alternative choice on the way to another worker</li>
+ *     <li>hashing the state of the car park and its processes after every
+ *     step, so that states reached by different schedules are only
+ *     explored once</li>
+ *     <li>running the workers on a fork-join pool across all cores, and
+ *     reporting the first deadlock found with the schedule leading to it</li>
+ * </ul>
+ *
+ * Time is ignored, as in the LTSA models: sleeping merely lets another
+ * process take a step, so every ordering of events which some timing could
+ * produce is explored.
+ * Each step of a process runs it up to its next channel operation or
+ * sleep; operations made while holding a monitor, like those in Lift's
+ * synchronized methods, are instead part of the step which took the
+ * monitor, since another process couldn't run until it was released.
+ * A car park is deadlocked when no process can take a step.
+ *
+ * The state of a car park is everything reachable from it, except for
+ * parameters, random number generators, versions, measurements and the
+ * identities of cars, together with where in the code each process will
+ * next step.
+ * Counters which only ever grow, such as the number of batches a Lift has
+ * carried, are also ignored so that the state space is finite, at the risk
+ * of confusing states which differ only in them.
+ * States are identified by a 128 bit hash of this, so distinct states are
+ * only confused with negligible probability.
+ *
+ * Only the event driven Operator can be explored, since the random one
+ * polls the lift forever, so a deadlocked car park would never stop
+ * taking steps.
+ */
+class Explorer {
+
+    // Command line flags limiting the number of steps in a schedule, the
+    // number of states to explore, and the number of workers.
+    // All other flags are parameters; see Param#load.
+    private static final String DEPTH = "--depth=";
+    private static final String STATES = "--states=";
+    private static final String JOBS = "--jobs=";
+
+    // The limits, by default.
+    private static final int DEFAULT_DEPTH = 200;
+    private static final long DEFAULT_STATES = 1000000;
+
+    // How long a run may take before it is considered stalled, such as by
+    // a process waiting on a monitor held by another.
+    private static final long STALL_SECONDS = 10;
+
+    // Reports which monitors the running process holds.
+    private static final ThreadMXBean THREADS =
+            ManagementFactory.getThreadMXBean();
+
+    // The counters which are ignored when hashing a state.
+    private static final Set<String> COUNTERS = new HashSet<>(Arrays.asList(
+            Lift.class.getName() + "#batch",
+            LiftBank.class.getName() + "$Cabin#trips"));
+
+    // Whether a process holds any monitor, by its location.
+    private static final Map<Long, Boolean> MONITORS =
+            new ConcurrentHashMap<>();
+
+    // The fields through which the state of each class is hashed.
+    private static final Map<Class<?>, List<Field>> FIELDS =
+            new ConcurrentHashMap<>();
+
+    private final Param param;
+    private final int depth;
+    private final long maxStates;
+    private final ForkJoinPool pool;
+
+    // The hashes of every state explored so far.
+    private final Set<Fingerprint> visited = ConcurrentHashMap.newKeySet();
+
+    // The number of schedules run, the longest schedule explored, and
+    // whether any schedule was cut short by the limits.
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicInteger deepest = new AtomicInteger();
+    private final AtomicBoolean bounded = new AtomicBoolean();
+    private final AtomicBoolean truncated = new AtomicBoolean();
+
+    // The report of the first deadlock or failure found, which stops the
+    // exploration, or null if none has been found.
+    private final AtomicReference<String> failure = new AtomicReference<>();
+
+    // Constructs an explorer of car parks with the specified parameters,
+    // within the specified limits, using the specified number of workers.
+    private Explorer(Param param, int depth, long maxStates, int jobs) {
+        this.param = param;
+        this.depth = depth;
+        this.maxStates = maxStates;
+        this.pool = new ForkJoinPool(jobs);
+    }
+
+    /**
+     * Explores the car park with the specified parameters, then prints how
+     * much was explored, and the first deadlock found, if any.
+     *
+     * Usage: {@code Explorer [--depth=<n>] [--states=<n>] [--jobs=<n>]
+     * <parameter>...}, where each parameter is a flag accepted by
+     * Param#load.
+     * {@code --depth} limits the number of steps in each schedule (200 by
+     * default), {@code --states} limits the number of distinct states
+     * explored (a million by default), and {@code --jobs} is the number of
+     * workers, which is the number of processors by default.
+     * The operator is event driven unless specified otherwise.
+     *
+     * Small car parks should be explored; for example,
+     * {@code --sections=2 --depth=400} explores every state of the car park
+     * with two sections on its only upper level.
+     * Exits with status 1 if a deadlock was found.
+     */
+    public static void main(String[] args) {
+        Logger.setLogType(Logger.LogType.NONE);
+        int depth = DEFAULT_DEPTH;
+        long maxStates = DEFAULT_STATES;
+        int jobs = Runtime.getRuntime().availableProcessors();
+        final List<String> paramArgs = new ArrayList<>();
+        paramArgs.add(String.format("--%s=%s", Param.OPERATOR, "event"));
+        final Param param;
+        try {
+            for (final String arg : args) {
+                if (arg.startsWith(DEPTH)) {
+                    depth = Integer.parseInt(arg.substring(DEPTH.length()));
+                } else if (arg.startsWith(STATES)) {
+                    maxStates = Long.parseLong(
+                            arg.substring(STATES.length()));
+                } else if (arg.startsWith(JOBS)) {
+                    jobs = Integer.parseInt(arg.substring(JOBS.length()));
+                } else {
+                    paramArgs.add(arg);
+                }
+            }
+            if (depth <= 0 || maxStates <= 0 || jobs <= 0) {
+                throw new IllegalArgumentException(
+                        "The depth, states and jobs must be positive");
+            }
+            param = Param.load(paramArgs.toArray(new String[0]));
+            if (param.operatorMode != Operator.Mode.EVENT) {
+                throw new IllegalArgumentException(
+                        "Only the event driven operator can be explored");
+            }
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        final Explorer explorer = new Explorer(param, depth, maxStates, jobs);
+        final long start = System.nanoTime();
+        explorer.explore();
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(
+                System.nanoTime() - start);
+
+        System.out.printf("Explored %d states in %d schedules of up to %d "
+                        + "steps, on %d workers in %d ms.%n",
+                explorer.visited.size(), explorer.runs.get(),
+                explorer.deepest.get(), jobs, elapsed);
+        final String failure = explorer.failure.get();
+        if (failure != null) {
+            System.out.print(failure);
+            System.exit(1);
+        }
+        System.out.println("No deadlock was found.");
+        if (explorer.bounded.get()) {
+            System.out.printf("Some schedules were cut short at %d steps; "
+                    + "a greater --depth would explore more.%n", depth);
+        }
+        if (explorer.truncated.get()) {
+            System.out.printf("The exploration stopped after %d states; "
+                    + "a greater --states would explore more.%n", maxStates);
+        }
+    }
+
+    // Explores every schedule from the initial state, waiting until every
+    // worker has finished.
+    private void explore() {
+        submit(new int[0]);
+        pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        pool.shutdown();
+    }
+
+    // Hands the schedule starting with the specified choices to a worker.
+    private void submit(int[] prefix) {
+        pool.execute(() -> {
+            if (failure.get() == null) {
+                new Run(prefix).explore();
+            }
+        });
+    }
+
+    // Records a report of a deadlock or failure, unless one has already
+    // been recorded.
+    private void fail(String report) {
+        failure.compareAndSet(null, report);
+    }
+
+    // The kinds of step a process may take next.
+    private enum Step {
+        START, SLEEP, GET, PUT, TRY
+    }
+
+    // Thrown into the processes of a run which has finished.
+    private static final class Stopped extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private Stopped() {
+            super("The run has finished", null, false, false);
+        }
+    }
+
+    /**
+     * A single run of a car park, which follows a schedule of choices, then
+     * explores onwards, handing the alternative choices to other workers.
+     *
+     * As a Scheduler, it lets exactly one process take a step at a time;
+     * the process which finishes a step chooses which one takes the next.
+     *
+     * See the implemented interface for documentation on overridden methods.
+     */
+    private final class Run implements Scheduler {
+
+        // The choices to replay, and the choices made so far, each of
+        // which is the index of a process among those able to step.
+        private final int[] prefix;
+        private int[] path;
+        private int steps = 0;
+
+        // The processes of the run, in the order they were started, and
+        // the process of the calling thread, if it is one of them.
+        private final List<Proc> procs = new ArrayList<>();
+        private final ThreadLocal<Proc> self = new ThreadLocal<>();
+
+        // Released when the run has finished.
+        private final Semaphore done = new Semaphore(0);
+        private volatile boolean stopped = false;
+
+        // The car park being run.
+        private CarPark carPark;
+
+        private Run(int[] prefix) {
+            this.prefix = prefix;
+            this.path = Arrays.copyOf(prefix, Math.max(16, prefix.length * 2));
+        }
+
+        // Builds and starts the car park, lets its first process step, and
+        // waits until the run has finished.
+        private void explore() {
+            runs.incrementAndGet();
+            try {
+                carPark = new Topology(param, this).build();
+                carPark.start();
+                final Proc first = choose();
+                if (first != null) {
+                    first.turn.release();
+                }
+                awaitTermination();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(
+                        "Explorer stopped; it was interrupted!", e);
+            } finally {
+                halt();
+            }
+        }
+
+        // Stops every process of the run, if they haven't been already.
+        private void halt() {
+            stopped = true;
+            for (final Proc proc : procs) {
+                proc.thread.interrupt();
+            }
+        }
+
+        @Override
+        public long now() {
+            return 0;
+        }
+
+        @Override
+        public void sleep(long millis) {
+            step(Step.SLEEP, null, location());
+        }
+
+        @Override
+        public <T> Channel<T> newChannel() {
+            return new Slot<>();
+        }
+
+        @Override
+        public void start(String name, Runnable process) {
+            final Proc proc = new Proc(name);
+            proc.thread = new Thread(() -> {
+                self.set(proc);
+                try {
+                    await(proc);
+                    process.run();
+                    if (!stopped) {
+                        fail(report(String.format(
+                                "%s finished unexpectedly", name)));
+                        stop();
+                    }
+                } catch (Stopped e) {
+                    // The run has finished.
+                } catch (RuntimeException | Error e) {
+                    if (!stopped) {
+                        fail(report(String.format("%s died with %s",
+                                name, e)));
+                        stop();
+                    }
+                }
+            }, name);
+            proc.thread.setDaemon(true);
+            procs.add(proc);
+            proc.thread.start();
+        }
+
+        // A run has finished when it has reached the depth or state limit,
+        // repeated a state, or found a problem; one which hasn't finished
+        // within STALL_SECONDS is reported as stalled, since its processes
+        // must be blocked outside the scheduler.
+        @Override
+        public void awaitTermination() throws InterruptedException {
+            if (!done.tryAcquire(STALL_SECONDS, TimeUnit.SECONDS)) {
+                fail(report("The car park stalled, probably waiting "
+                        + "on a monitor,"));
+            }
+            halt();
+        }
+
+        // Finishes the calling process's step, before it takes the
+        // specified step at the specified location, and lets the chosen
+        // process take the next step.
+        private void step(Step step, Slot<?> slot, long location) {
+            final Proc proc = self.get();
+            if (proc == null) {
+                throw new IllegalStateException(
+                        "only the processes of the car park may step");
+            }
+            proc.step = step;
+            proc.slot = slot;
+            proc.location = location;
+            final Proc next = choose();
+            if (next == proc) return;
+            if (next != null) {
+                next.turn.release();
+            }
+            await(proc);
+        }
+
+        // Waits for the specified process's turn.
+        private void await(Proc proc) {
+            try {
+                proc.turn.acquire();
+            } catch (InterruptedException e) {
+                throw new Stopped();
+            }
+            if (stopped) throw new Stopped();
+        }
+
+        // Chooses the process which takes the next step, by replaying the
+        // prefix, or by exploring the state reached; returns null if the
+        // run has finished.
+        private Proc choose() {
+            final List<Proc> able = new ArrayList<>(procs.size());
+            for (final Proc proc : procs) {
+                if (proc.isAble()) {
+                    able.add(proc);
+                }
+            }
+            final int choice;
+            if (steps < prefix.length) {
+                choice = prefix[steps];
+                if (choice >= able.size()) {
+                    fail(report("The replay diverged; the car park is not "
+                            + "deterministic"));
+                    return stop();
+                }
+            } else {
+                if (failure.get() != null) return stop();
+                if (steps >= depth) {
+                    bounded.set(true);
+                    return stop();
+                }
+                if (visited.size() >= maxStates) {
+                    truncated.set(true);
+                    return stop();
+                }
+                if (!visited.add(fingerprint())) return stop();
+                deepest.accumulateAndGet(steps, Math::max);
+                if (able.isEmpty()) {
+                    fail(report("Deadlock"));
+                    return stop();
+                }
+                for (int i = 1; i < able.size(); i += 1) {
+                    final int[] alternative = Arrays.copyOf(path, steps + 1);
+                    alternative[steps] = i;
+                    submit(alternative);
+                }
+                choice = 0;
+            }
+            if (steps == path.length) {
+                path = Arrays.copyOf(path, path.length * 2);
+            }
+            path[steps] = choice;
+            steps += 1;
+            return able.get(choice);
+        }
+
+        // Finishes the run.
+        private Proc stop() {
+            stopped = true;
+            done.release();
+            return null;
+        }
+
+        // Returns the hash of the state of the car park and its processes.
+        private Fingerprint fingerprint() {
+            final Hasher hasher = new Hasher();
+            hasher.walk(carPark);
+            for (final Proc proc : procs) {
+                hasher.add(proc.step.ordinal());
+                hasher.walk(proc.slot);
+                hasher.add(proc.location);
+            }
+            return new Fingerprint(hasher.a, hasher.b);
+        }
+
+        // Describes the run so far: the schedule, the state of the car
+        // park, and where each process is waiting.
+        private String report(String what) {
+            final StringBuilder report = new StringBuilder();
+            report.append(String.format("%s after %d steps: %s%n", what,
+                    steps, Arrays.toString(Arrays.copyOf(path, steps))));
+            if (carPark != null) {
+                report.append(carPark.snapshot().draw());
+            }
+            for (final Proc proc : procs) {
+                report.append(String.format("  %s %s to %s%n", proc.name,
+                        proc.isAble() ? "is about" : "waits",
+                        proc.step.name().toLowerCase()));
+                for (final StackTraceElement frame :
+                        proc.thread.getStackTrace()) {
+                    if (isCarPark(frame)) {
+                        report.append(String.format("\tat %s%n", frame));
+                    }
+                }
+            }
+            return report.toString();
+        }
+
+        // A process of the run, and the step it will take next.
+        private final class Proc {
+            private final String name;
+            private Thread thread;
+            private final Semaphore turn = new Semaphore(0);
+
+            // The step the process will take next, the channel it steps on,
+            // if any, and the hash of where in the code it is.
+            // Only accessed by the process taking a step.
+            private Step step = Step.START;
+            private Slot<?> slot = null;
+            private long location = 0;
+
+            private Proc(String name) {
+                this.name = name;
+            }
+
+            // Returns true if the process can take its next step.
+            private boolean isAble() {
+                switch (step) {
+                    case GET:
+                        return slot.isFull;
+                    case PUT:
+                        return !slot.isFull;
+                    default:
+                        return true;
+                }
+            }
+        }
+
+        /**
+         * A Channel whose operations are steps of the run, except when the
+         * caller holds a monitor and the operation can complete at once.
+         *
+         * Since only one process runs at a time, no locking is required.
+         *
+         * See the implemented interface for documentation on overridden
+         * methods.
+         */
+        private final class Slot<T> implements Channel<T> {
+            private boolean isFull = false;
+            private T item = null;
+
+            @Override
+            public T get() {
+                if (self.get() == null) {
+                    if (!isFull) {
+                        throw new IllegalStateException(
+                                "only the processes of the car park may wait");
+                    }
+                } else {
+                    final long location = location();
+                    if (!isFull || !holdsMonitor(location)) {
+                        step(Step.GET, this, location);
+                    }
+                }
+                isFull = false;
+                return item;
+            }
+
+            @Override
+            public void put(T item) {
+                if (self.get() == null) {
+                    if (isFull) {
+                        throw new IllegalStateException(
+                                "only the processes of the car park may wait");
+                    }
+                } else {
+                    final long location = location();
+                    if (isFull || !holdsMonitor(location)) {
+                        step(Step.PUT, this, location);
+                    }
+                }
+                this.item = item;
+                isFull = true;
+            }
+
+            @Override
+            public Optional<T> getIfReady() {
+                tryStep();
+                if (!isFull) return Optional.empty();
+                isFull = false;
+                return Optional.of(item);
+            }
+
+            @Override
+            public boolean putIfEmpty(T item) {
+                tryStep();
+                if (isFull) return false;
+                this.item = item;
+                isFull = true;
+                return true;
+            }
+
+            // Makes an operation which never waits a step, unless the
+            // caller holds a monitor or isn't a process of the car park.
+            private void tryStep() {
+                if (self.get() == null) return;
+                final long location = location();
+                if (!holdsMonitor(location)) {
+                    step(Step.TRY, this, location);
+                }
+            }
+        }
+    }
+
+    // Returns true if the calling thread, which is at the specified
+    // location, holds any monitor.
+    // This only depends on the location, and asking the JVM is slow, so the
+    // answer is remembered.
+    // The JVM is asked outside of the map, which may lock while computing.
+    private static boolean holdsMonitor(long location) {
+        final Boolean known = MONITORS.get(location);
+        if (known != null) return known;
+        final boolean holds = THREADS.getThreadInfo(new long[] {
+                Thread.currentThread().getId()}, true, false)[0]
+                .getLockedMonitors().length > 0;
+        MONITORS.put(location, holds);
+        return holds;
+    }
+
+    // Returns the hash of where in the car park's code the calling thread
+    // is.
+    private static long location() {
+        long location = 0;
+        for (final StackTraceElement frame : new Throwable().getStackTrace()) {
+            if (isCarPark(frame)) {
+                location = location * 31 + frame.getClassName().hashCode();
+                location = location * 31 + frame.getMethodName().hashCode();
+                location = location * 31 + frame.getLineNumber();
+            }
+        }
+        return location;
+    }
+
+    // Returns true if the frame is in the car park's code, rather than the
+    // explorer's or the JDK's.
+    private static boolean isCarPark(StackTraceElement frame) {
+        return frame.getClassName().startsWith(
+                Explorer.class.getPackage().getName())
+                && !frame.getClassName().startsWith(Explorer.class.getName());
+    }
+
+    // The 128 bit hash of a state.
+    private static final class Fingerprint {
+        private final long a;
+        private final long b;
+
+        private Fingerprint(long a, long b) {
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Fingerprint)) return false;
+            final Fingerprint that = (Fingerprint) other;
+            return a == that.a && b == that.b;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(a);
+        }
+    }
+
+    // Hashes the graph of objects reachable from a car park, in a fixed
+    // order, into two independent 64 bit hashes.
+    private static final class Hasher {
+        private long a = 0xCBF29CE484222325L;
+        private long b = 0x9E3779B97F4A7C15L;
+
+        // The objects hashed so far, and the order they were reached in,
+        // so that shared objects and cycles are only hashed once.
+        private final Map<Object, Integer> seen = new IdentityHashMap<>();
+
+        private void add(long x) {
+            a = (a ^ x) * 0x100000001B3L;
+            b = Long.rotateLeft(b ^ (x * 0xC2B2AE3D27D4EB4FL), 31)
+                    * 0x9E3779B97F4A7C15L;
+        }
+
+        private void walk(Object object) {
+            if (object == null) {
+                add(0);
+                return;
+            }
+            // Cars are interchangeable, so only their presence matters.
+            if (object instanceof Car) {
+                add(1);
+                return;
+            }
+            if (isIgnored(object)) {
+                add(2);
+                return;
+            }
+            final Integer index = seen.get(object);
+            if (index != null) {
+                add(3);
+                add(index);
+                return;
+            }
+            seen.put(object, seen.size());
+
+            final Class<?> type = object.getClass();
+            add(type.getName().hashCode());
+            if (object instanceof Enum) {
+                add(((Enum<?>) object).name().hashCode());
+            } else if (object instanceof Number || object instanceof String
+                    || object instanceof Boolean
+                    || object instanceof Character) {
+                add(object.hashCode());
+            } else if (object instanceof Run.Slot) {
+                final Run.Slot<?> slot = (Run.Slot<?>) object;
+                add(slot.isFull ? 1 : 0);
+                walk(slot.isFull ? slot.item : null);
+            } else if (object instanceof Collection) {
+                add(((Collection<?>) object).size());
+                for (final Object element : (Collection<?>) object) {
+                    walk(element);
+                }
+            } else if (object instanceof Map) {
+                add(((Map<?, ?>) object).size());
+                for (final Map.Entry<?, ?> entry
+                        : ((Map<?, ?>) object).entrySet()) {
+                    walk(entry.getKey());
+                    walk(entry.getValue());
+                }
+            } else if (type.isArray()) {
+                add(Array.getLength(object));
+                for (int i = 0; i < Array.getLength(object); i += 1) {
+                    walk(Array.get(object, i));
+                }
+            } else if (object instanceof AtomicReferenceArray) {
+                final AtomicReferenceArray<?> array =
+                        (AtomicReferenceArray<?>) object;
+                add(array.length());
+                for (int i = 0; i < array.length(); i += 1) {
+                    walk(array.get(i));
+                }
+            } else if (object instanceof AtomicReference) {
+                walk(((AtomicReference<?>) object).get());
+            } else if (object instanceof AtomicInteger
+                    || object instanceof AtomicLong
+                    || object instanceof AtomicBoolean) {
+                add(object.toString().hashCode());
+            } else if (!type.getName().startsWith("java.")) {
+                for (final Field field : fields(type)) {
+                    try {
+                        walk(field.get(object));
+                    } catch (IllegalAccessException e) {
+                        throw new RuntimeException(
+                                "Unexpected inaccessible field!", e);
+                    }
+                }
+            }
+        }
+
+        // Returns true if the object doesn't affect what the car park can
+        // do next, once time is ignored.
+        private static boolean isIgnored(Object object) {
+            return object instanceof Param || object instanceof Scheduler
+                    || object instanceof Version
+                    || object instanceof Lapses
+                    || object instanceof CarIds
+                    || object instanceof Metrics
+                    || object instanceof Metrics.Component
+                    || object instanceof Histogram
+                    || object instanceof Sojourns
+                    || object instanceof CarIds.Generator
+                    || object instanceof Random
+                    || object instanceof SplittableRandom
+                    || object instanceof Thread;
+        }
+
+        // Returns the instance fields of a class and its superclasses, in a
+        // fixed order.
+        private static List<Field> fields(Class<?> type) {
+            return FIELDS.computeIfAbsent(type, t -> {
+                final List<Field> fields = new ArrayList<>();
+                for (Class<?> c = t; c != null && c != Object.class;
+                     c = c.getSuperclass()) {
+                    for (final Field field : c.getDeclaredFields()) {
+                        if (Modifier.isStatic(field.getModifiers())) continue;
+                        if (COUNTERS.contains(String.format("%s#%s",
+                                c.getName(), field.getName()))) continue;
+                        field.setAccessible(true);
+                        fields.add(field);
+                    }
+                }
+                fields.sort(Comparator.comparing((Field f) ->
+                        f.getDeclaringClass().getName())
+                        .thenComparing(Field::getName));
+                return fields;
+            });
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of towing vehicles shared by the hops between adjacent sections,
+ * so that an idle vehicle can help a congested stretch, and the size of the
+ * fleet is independent of the number of sections.
+ *
+ * Responsible for:
+ * <ul>
+ *     <li>dealing the hops out between the vehicles of the fleet</li>
+ *     <li>running each vehicle, which tows a car over whichever hop is
+ *     ready: its source has a car and its destination has an empty bay</li>
+ *     <li>waking idle vehicles whenever a hop may have become ready</li>
+ * </ul>
+ *
+ * Each vehicle owns a deque of hops, and looks for a ready hop among them
+ * from the front; if none is ready, it steals work by looking through the
+ * other vehicles' hops from the back.
+ * Hops are claimed without waiting for their sections (see
+ * Space#acquireIfEmpty and Space#acquireIfFull), so two vehicles can never
+ * tow over the same hop at once, and a vehicle never waits while holding a
+ * hop; vehicles only wait for each other's claims of the same hop.
+ *
+ * The vehicles which launch cars into the first section of each level and
+ * load cars from the last section into the lift are not part of the fleet,
+ * since they wait on the lift; their ends of the sections must be wrapped
+ * with #watchEntry and #watchExit, so that the fleet notices the hops they
+ * make ready.
+ */
+class Fleet {
+
+    /**
+     * A hop from one section to the next, and the car being towed over it,
+     * which is observable like the car towed by a Vehicle.
+     */
+    static final class Hop {
+        private final String name;
+
+        // The sections, through which the hop is claimed, and the adapters
+        // of them through which cars are moved, such as metered adapters.
+        private final Space source;
+        private final Space destination;
+        private final ResourceExit<Car> exit;
+        private final ResourceEntry<Car> entry;
+
+        // The car being towed over the hop, as for Vehicle#item.
+        private volatile Car car = null;
+
+        // Has a message in it when no vehicle is claiming the hop.
+        private final Channel<Object> claiming;
+
+        private Hop(String name,
+                    Space source,
+                    Space destination,
+                    ResourceExit<Car> exit,
+                    ResourceEntry<Car> entry,
+                    Scheduler scheduler) {
+            this.name = name;
+            this.source = source;
+            this.destination = destination;
+            this.exit = exit;
+            this.entry = entry;
+            this.claiming = scheduler.newChannel();
+            claiming.putIfEmpty(Boolean.TRUE);
+        }
+
+        /**
+         * Returns the car being towed over the hop, or null if there is
+         * none.
+         *
+         * This is observable state, which may be read by any thread; see
+         * Version.
+         */
+        Car item() {
+            return car;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+
+        // Takes ownership of both sections if the hop is ready, without
+        // waiting for either; returns true if it did.
+        // Claims of the same hop are made one at a time: otherwise a
+        // vehicle woken by a change to the source could find the
+        // destination briefly held by another vehicle's failing claim, and
+        // go idle, after which neither would notice the hop was ready.
+        // Each end of a section belongs to a single hop, so nothing else
+        // claims these sections without waiting.
+        // The claim is serialised with a channel rather than a monitor,
+        // since acquiring the destination may briefly wait for a bay which
+        // is being released; see Lane#reserve.
+        private boolean claim() throws InterruptedException {
+            claiming.get();
+            try {
+                if (!destination.acquireIfEmpty()) return false;
+                if (source.acquireIfFull()) return true;
+                destination.cancelEmpty();
+                return false;
+            } finally {
+                claiming.put(Boolean.TRUE);
+            }
+        }
+    }
+
+    // The number of vehicles in the fleet.
+    private final int size;
+
+    // Every hop, and the hops owned by each vehicle of the fleet.
+    private final List<Hop> hops = new ArrayList<>();
+    private final List<List<Hop>> deques;
+
+    // A channel holding a token whenever a hop may have become ready since
+    // an idle vehicle last looked for one.
+    private final Channel<Object> signal;
+
+    private final Param param;
+    private final Scheduler scheduler;
+    private final Version version;
+
+    // The measurements of the fleet, or null if it is not measured.
+    private final LongAdder tows;
+    private final LongAdder steals;
+    private final LongAdder busy;
+
+    /**
+     * Constructs a fleet of the specified number of vehicles, with no hops.
+     *
+     * @param size the number of vehicles, which must be positive.
+     * @param param the Param determining how long the vehicles take to tow,
+     *              and when they release their sources.
+     * @param scheduler the Scheduler which runs the vehicles.
+     * @param version the version of the observable state of the car park.
+     * @param metrics the component in which to count tows, steals and the
+     *                nanoseconds spent towing, or null if the fleet should
+     *                not be measured.
+     */
+    Fleet(int size,
+          Param param,
+          Scheduler scheduler,
+          Version version,
+          Metrics.Component metrics) {
+        if (size <= 0) {
+            throw new IllegalArgumentException(
+                    "A fleet must have at least one vehicle");
+        }
+        this.size = size;
+        this.param = param;
+        this.scheduler = scheduler;
+        this.version = version;
+        this.signal = scheduler.newChannel();
+        this.deques = new ArrayList<>(size);
+        for (int i = 0; i < size; i += 1) {
+            deques.add(new ArrayList<>());
+        }
+        tows = (metrics == null) ? null : metrics.counter("tows");
+        steals = (metrics == null) ? null : metrics.counter("steals");
+        busy = (metrics == null) ? null : metrics.counter("busy ns");
+    }
+
+    /**
+     * Adds a hop between two sections, owned by the next vehicle in turn.
+     *
+     * @param name the name of the hop, like the name of the Vehicle it
+     *             replaces.
+     * @param source the section cars are towed out of.
+     * @param destination the section cars are towed into.
+     * @param exit the adapter of the source through which cars are gotten.
+     * @param entry the adapter of the destination through which cars are
+     *              put.
+     * @return the hop.
+     */
+    Hop hop(String name,
+            Space source,
+            Space destination,
+            ResourceExit<Car> exit,
+            ResourceEntry<Car> entry) {
+        final Hop hop = new Hop(name, source, destination, exit, entry,
+                scheduler);
+        deques.get(hops.size() % size).add(hop);
+        hops.add(hop);
+        return hop;
+    }
+
+    /**
+     * Returns an adapter of the entry of a section which wakes the fleet
+     * whenever a car is put into it.
+     */
+    ResourceEntry<Car> watchEntry(ResourceEntry<Car> entry) {
+        return new ResourceEntry<Car>() {
+            @Override
+            public void put(Car car) throws InterruptedException {
+                entry.put(car);
+                wake();
+            }
+
+            @Override
+            public void acquireWhenEmpty() throws InterruptedException {
+                entry.acquireWhenEmpty();
+            }
+
+            @Override
+            public String toString() {
+                return entry.toString();
+            }
+        };
+    }
+
+    /**
+     * Returns an adapter of the exit of a section which wakes the fleet
+     * whenever the section is made available.
+     */
+    ResourceExit<Car> watchExit(ResourceExit<Car> exit) {
+        return new ResourceExit<Car>() {
+            @Override
+            public void makeAvailable() throws InterruptedException {
+                exit.makeAvailable();
+                wake();
+            }
+
+            @Override
+            public Car getNow() {
+                return exit.getNow();
+            }
+
+            @Override
+            public void acquireWhenFull() throws InterruptedException {
+                exit.acquireWhenFull();
+            }
+
+            @Override
+            public String toString() {
+                return exit.toString();
+            }
+        };
+    }
+
+    /** Returns the processes of the vehicles of the fleet, by name. */
+    Map<String, Runnable> processes() {
+        final Map<String, Runnable> processes = new LinkedHashMap<>();
+        for (int i = 0; i < size; i += 1) {
+            final int vehicle = i;
+            processes.put("fleet " + i, () -> run(vehicle));
+        }
+        return Collections.unmodifiableMap(processes);
+    }
+
+    // Wakes an idle vehicle, if there is one, to look for a ready hop.
+    private void wake() {
+        signal.putIfEmpty(Boolean.TRUE);
+    }
+
+    // Repeatedly tows a car over a ready hop, as the specified vehicle.
+    private void run(int vehicle) {
+        while (true) {
+            try {
+                final Hop hop = claim(vehicle);
+                if (hop == null) {
+                    // Nothing is ready, so wait until something changes.
+                    signal.get();
+                    continue;
+                }
+
+                // More hops may be ready, so let another vehicle look too.
+                wake();
+                tow(hop);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(String.format(
+                        "Fleet vehicle %d stopped; it was interrupted!",
+                        vehicle), e);
+            }
+        }
+    }
+
+    // Claims a ready hop for the specified vehicle, looking at its own hops
+    // from the front, then at every other vehicle's from the back.
+    // Returns null if no hop is ready.
+    private Hop claim(int vehicle) throws InterruptedException {
+        for (final Hop hop : deques.get(vehicle)) {
+            if (hop.claim()) return hop;
+        }
+        for (int i = 1; i < size; i += 1) {
+            final List<Hop> victim = deques.get((vehicle + i) % size);
+            for (int j = victim.size() - 1; j >= 0; j -= 1) {
+                final Hop hop = victim.get(j);
+                if (hop.claim()) {
+                    if (steals != null) steals.increment();
+                    return hop;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Tows a car over a claimed hop, like Vehicle#run, waking the fleet
+    // when each section changes.
+    private void tow(Hop hop) throws InterruptedException {
+        final long start = scheduler.nanoTime();
+        version.beginWrite();
+        try {
+            hop.car = hop.exit.getNow();
+        } finally {
+            version.endWrite();
+        }
+        if (param.towingProtocol == Vehicle.Protocol.PIPELINED) {
+            hop.exit.makeAvailable();
+            wake();
+        }
+        scheduler.sleep(param.towingTime);
+        version.beginWrite();
+        try {
+            hop.entry.put(hop.car);
+            hop.car = null;
+        } finally {
+            version.endWrite();
+        }
+        if (param.towingProtocol == Vehicle.Protocol.STRICT) {
+            hop.exit.makeAvailable();
+        }
+        wake();
+        if (tows != null) {
+            tows.increment();
+            busy.add(scheduler.nanoTime() - start);
+        }
+    }
+}
@@ -5,32 +5,140 @@ package com.github.nedp.swen90004.carpark;
  * a Freeable object is free before allowing the
  * GuardedLiftResource to be acquired in an empty state.
  *
+ * At most one car may be travelling through a GuardedLiftResource at a time;
+ * it may not be acquired again until the car has been taken out of it and it
+ * has been made available.
+ * With a single Lift this is always the case, but with a LiftBank it stops
+ * several cabins from carrying cars towards the same Freeable, which could
+ * only take one of them.
+ *
+ * If the lift carries several cars per trip, a budget of more than one car
+ * may be given instead, which is the number of bays of the Space the
+ * resource leads to.
+ * A car then takes one of the budget when it enters the lift, and gives it
+ * back when it leaves that space (see #releasing), so the space can always
+ * take every car travelling towards it, however many share a trip.
+ *
  * See overriden methods for full documentation.
  */
 public class GuardedLiftResource extends LiftResource {
 
     final Freeable freeable;
 
+    // The number of cars which may be travelling towards the freeable at
+    // once, and the number which may still set off.
+    // The latter is guarded by this resource.
+    private final int budget;
+    private int credits;
+
+    // Has a message in it when a car may set off through this resource;
+    // with a budget of 1, when no car is travelling through it.
+    private final Channel<Object> vacant;
+
     /**
      * Constructs a new GuardedLiftResource without performing any actions.
      *
-     * @param lift     the Lift by which this LiftResource is backed.
+     * @param lift     the Elevator by which this LiftResource is backed.
      * @param putIndex the index of the lift at which Cars should put into the
      *                 lift.
      * @param getIndex the index of the lift at which Cars should be gotten
-     *
+     *                 from the lift.
+     * @param freeable the object which must be free before the lift may be
+     *                 acquired in an empty state.
+     * @param budget   the number of cars which may be travelling towards the
+     *                 freeable at once; if more than 1, it must be no more
+     *                 than the number of cars the freeable can hold.
+     * @param scheduler the scheduler providing the resource's channel.
      */
-    GuardedLiftResource(Lift<Car> lift,
+    GuardedLiftResource(Elevator<Car> lift,
                         int putIndex,
                         int getIndex,
-                        Freeable freeable) {
+                        Freeable freeable,
+                        int budget,
+                        Scheduler scheduler) {
         super(lift, putIndex, getIndex);
+        if (budget <= 0) {
+            throw new IllegalArgumentException(
+                    "A lift resource must allow at least one car");
+        }
         this.freeable = freeable;
+        this.budget = budget;
+        this.credits = budget;
+        this.vacant = scheduler.newChannel();
+
+        // It should be impossible for this call to wait, because it is
+        // a fresh channel.
+        try {
+            vacant.put(new Object());
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Unexpected wait!", e);
+        }
+    }
+
+    /**
+     * Returns an adapter of the exit of the guarded space which gives a car
+     * back to the budget whenever the space is made available.
+     *
+     * With a budget of 1, the exit itself is returned, since each car gives
+     * itself back when it is taken out of the lift.
+     */
+    ResourceExit<Car> releasing(ResourceExit<Car> exit) {
+        if (budget == 1) return exit;
+        return new ResourceExit<Car>() {
+            @Override
+            public void makeAvailable() throws InterruptedException {
+                exit.makeAvailable();
+                give();
+            }
+
+            @Override
+            public Car getNow() {
+                return exit.getNow();
+            }
+
+            @Override
+            public void acquireWhenFull() throws InterruptedException {
+                exit.acquireWhenFull();
+            }
+
+            @Override
+            public String toString() {
+                return exit.toString();
+            }
+        };
     }
 
     @Override
     public void acquireWhenEmpty() throws InterruptedException {
-        freeable.waitUntilFree();
+        take();
+        if (budget == 1) {
+            freeable.waitUntilFree();
+        }
         super.acquireWhenEmpty();
     }
+
+    @Override
+    public void makeAvailable() throws InterruptedException {
+        super.makeAvailable();
+        if (budget == 1) {
+            give();
+        }
+    }
+
+    // Waits until a car may set off, then takes it out of the budget.
+    private void take() throws InterruptedException {
+        vacant.get();
+        synchronized (this) {
+            credits -= 1;
+            if (credits > 0) {
+                vacant.putIfEmpty(new Object());
+            }
+        }
+    }
+
+    // Gives a car back to the budget.
+    private synchronized void give() {
+        credits += 1;
+        vacant.putIfEmpty(new Object());
+    }
 }
@@ -0,0 +1,112 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative values, such as durations in
+ * nanoseconds, with bounded relative error.
+ *
+ * Like an HDR histogram, values are counted in buckets whose width grows
+ * with their magnitude: each power of 2 is split into SUB_BUCKETS equal
+ * buckets, so a reported percentile is within 1/SUB_BUCKETS of the true
+ * value, however large it is.
+ *
+ * Recording a value never waits or allocates, so histograms may be updated
+ * from any number of threads on hot paths.
+ * Reading a percentile while values are being recorded gives a result which
+ * is consistent with some, but not necessarily all, of the concurrent
+ * recordings.
+ */
+class Histogram {
+
+    // The number of bits of each value below its highest set bit which
+    // select its bucket.
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    // Enough buckets for every non-negative long.
+    private static final int N_BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(N_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong(0);
+
+    /** Records a value; negative values are recorded as 0. */
+    void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        sum.add(value);
+        long previous = max.get();
+        while (value > previous && !max.compareAndSet(previous, value)) {
+            previous = max.get();
+        }
+    }
+
+    /** Returns the number of values recorded. */
+    long count() {
+        return count.sum();
+    }
+
+    /** Returns the mean of the values recorded, or 0 if there are none. */
+    double mean() {
+        final long count = count();
+        return (count == 0) ? 0 : (double) sum.sum() / count;
+    }
+
+    /** Returns the largest value recorded, or 0 if there are none. */
+    long max() {
+        return max.get();
+    }
+
+    /**
+     * Returns the smallest value which is at least the specified percentage
+     * of the values recorded, to within the precision of the buckets,
+     * or 0 if there are none.
+     *
+     * @param percentile the percentage, between 0 and 100.
+     */
+    long percentile(double percentile) {
+        final long[] snapshot = new long[N_BUCKETS];
+        long total = 0;
+        for (int i = 0; i < N_BUCKETS; i += 1) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) return 0;
+
+        final long rank =
+                Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < N_BUCKETS; i += 1) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highest(i), max());
+            }
+        }
+        return max();
+    }
+
+    // Returns the bucket counting the specified non-negative value.
+    // Values below SUB_BUCKETS have a bucket each; larger values share
+    // a bucket with the others which agree in their highest SUB_BITS + 1
+    // bits.
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BITS;
+        final int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    // Returns the highest value counted by the specified bucket.
+    private static long highest(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        final int shift = bucket / SUB_BUCKETS - 1;
+        final long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,244 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An implementation of the Resource interface for Car cars which holds up
+ * to a fixed number of cars in a queue of bays, such as a section with
+ * several parking bays or a queueing lane, with support for observing the
+ * state of each bay.
+ *
+ * The bays form a ring buffer: cars are put into the bays in turn and are
+ * gotten from them in the same order, so the lane is first in, first out.
+ * Each bay has its own channels for signalling that it is empty and that it
+ * is full, so a car may be put into the lane while another is being towed
+ * out of it, and one slow tow only stalls the chain once every bay is full.
+ *
+ * The lane is free, for the purposes of the Freeable interface, while fewer
+ * bays are reserved than it has; a bay is reserved from when it is acquired
+ * while empty until it is made available again, as for a Section.
+ * A lane of capacity 1 behaves exactly like a Section.
+ *
+ * Only one vehicle may own each end of a lane at a time, which the
+ * channels of its bays ensure; a car is put into the bay at the tail and
+ * gotten from the bay at the head.
+ *
+ * See the implemented interface for documentation on overridden methods.
+ */
+class Lane implements Space {
+
+    // Should uniquely identify the lane, assisting with state and event
+    // messages.
+    private final int id;
+
+    // Channels for (internal) signalling of the availability of each bay for
+    // receiving a new car, and for synchronising the getting and putting of
+    // the car in each bay.
+    private final List<Channel<Object>> empty;
+    private final List<Channel<Car>> full;
+
+    // A channel for (internal) signalling of whether the lane is considered
+    // 'free' for the purposes of the Freeable interface; it holds a token
+    // exactly when fewer than all of the bays are reserved.
+    private final Channel<Object> free;
+
+    // The number of bays which are reserved.
+    // Guarded by this lane, since it is changed from both ends.
+    private int reserved = 0;
+
+    // The bay which the next car will be put into, and the bay which the
+    // next car will be gotten from.
+    // Each is only changed by the vehicle which owns its end of the lane,
+    // before handing the bay over, but may be read by any vehicle looking
+    // for work.
+    // Both are changed under the lane's monitor, so that a vehicle claiming
+    // an end without waiting can't claim a bay which has already been
+    // recycled; see #acquireIfEmpty and #acquireIfFull.
+    private volatile int tail = 0;
+    private volatile int head = 0;
+
+    // Used for tracking the 'state' of each bay, as for Section#car.
+    // Cars are stored in their bay when they are put into the lane, and
+    // removed when they are gotten from it, both by vehicles which are
+    // changing the observable state.
+    private final AtomicReferenceArray<Car> bays;
+
+    /**
+     * Constructs an empty lane with the specified id and number of bays,
+     * using channels from the specified scheduler.
+     *
+     * @param id the id of the lane.
+     * @param capacity the number of bays, which must be positive.
+     * @param scheduler the scheduler providing the lane's channels.
+     */
+    Lane(int id, int capacity, Scheduler scheduler) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException(
+                    "A lane must have at least one bay");
+        }
+        this.id = id;
+        this.bays = new AtomicReferenceArray<>(capacity);
+        this.empty = new ArrayList<>(capacity);
+        this.full = new ArrayList<>(capacity);
+        this.free = scheduler.newChannel();
+
+        // Signal that every bay is initially available, and that the lane
+        // is free.
+        // It should be impossible for these calls to wait, because they are
+        // fresh channels.
+        try {
+            for (int i = 0; i < capacity; i += 1) {
+                final Channel<Object> bay = scheduler.newChannel();
+                bay.put(new Object());
+                empty.add(bay);
+                full.add(scheduler.newChannel());
+            }
+            free.put(new Object());
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Unexpected wait!", e);
+        }
+    }
+
+    @Override
+    public void makeAvailable() throws InterruptedException {
+        final int bay;
+        synchronized (this) {
+            bay = head;
+            head = next(bay);
+        }
+        empty.get(bay).put(new Object());
+        release();
+    }
+
+    @Override
+    public Car getNow() {
+        final Car car = bays.getAndSet(head, null);
+        Logger.logEvent("%s leaves section %d", car, id);
+        Trace.record(Trace.Event.LEAVE_SECTION, car, -1, id);
+        return car;
+    }
+
+    @Override
+    public void acquireWhenFull() throws InterruptedException {
+        // The car was already recorded when it was put.
+        // As for #acquireWhenEmpty, this must not race with #acquireIfFull.
+        full.get(head).get();
+    }
+
+    @Override
+    public void put(Car car) throws InterruptedException {
+        final int bay;
+        synchronized (this) {
+            bay = tail;
+            tail = next(bay);
+        }
+
+        // Report the car before handing it over, so that it can't be
+        // reported leaving before it is reported entering.
+        bays.set(bay, car);
+        car.stamp();
+        Logger.logEvent("%s enters section %d", car, id);
+        Trace.record(Trace.Event.ENTER_SECTION, car, -1, id);
+        full.get(bay).put(car);
+    }
+
+    @Override
+    public void acquireWhenEmpty() throws InterruptedException {
+        // This waits without the lane's monitor, so it must not race with
+        // #acquireIfEmpty; the tail end is owned by a single vehicle, or
+        // only claimed without waiting, as by a Fleet.
+        empty.get(tail).get();
+        reserve();
+    }
+
+    @Override
+    public synchronized boolean acquireIfFull() {
+        // As for #acquireIfEmpty, read the head and claim its bay as one
+        // step.
+        return full.get(head).getIfReady().isPresent();
+    }
+
+    @Override
+    public boolean acquireIfEmpty() throws InterruptedException {
+        // Read the tail and claim its bay as one step, since the tail may
+        // be moved by a vehicle which claimed it first; a stale tail's bay
+        // may have been recycled since.
+        synchronized (this) {
+            if (!empty.get(tail).getIfReady().isPresent()) return false;
+        }
+        reserve();
+        return true;
+    }
+
+    @Override
+    public void cancelEmpty() throws InterruptedException {
+        // The tail was never filled, so it stays where it is.
+        empty.get(tail).put(new Object());
+        release();
+    }
+
+    // Records that a bay has been reserved.
+    // When the last bay is reserved, the lane can no longer be considered
+    // free until a bay is made available again.
+    // The count is changed under the lane's monitor, but the token is taken
+    // outside it, since #waitUntilFree may briefly be holding it; each token
+    // taken here is matched by one given back by #release, in either order.
+    private void reserve() throws InterruptedException {
+        final boolean isLast;
+        synchronized (this) {
+            reserved += 1;
+            isLast = (reserved == bays.length());
+        }
+        if (isLast) {
+            free.get();
+        }
+    }
+
+    // Records that a reserved bay is available again, after which the lane
+    // can be considered free.
+    // As for #reserve, the token is given back outside the lane's monitor;
+    // this only waits until the matching #reserve has taken it.
+    private void release() throws InterruptedException {
+        final boolean wasFull;
+        synchronized (this) {
+            wasFull = (reserved == bays.length());
+            reserved -= 1;
+        }
+        if (wasFull) {
+            free.put(new Object());
+        }
+    }
+
+    // Returns the bay after the specified bay, wrapping around the ring.
+    private int next(int bay) {
+        return (bay + 1) % bays.length();
+    }
+
+    @Override
+    public int id() {
+        return id;
+    }
+
+    @Override
+    public int capacity() {
+        return bays.length();
+    }
+
+    @Override
+    public Car car(int bay) {
+        return bays.get(bay);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("section %d", id);
+    }
+
+    @Override
+    public void waitUntilFree() throws InterruptedException {
+        // As for Section, wait without holding any lock.
+        free.put(free.get());
+    }
+}
@@ -0,0 +1,105 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * A process which decides how long to wait before each event of a stream,
+ * such as the arrival of cars at an entrance or their departure through an
+ * exit.
+ *
+ * Implementations may be stateful, so each stream needs its own instance
+ * and, if it is random, its own generator; see Param#arrivals(int) and
+ * Param#departures(int).
+ */
+interface Lapses {
+
+    /**
+     * Returns the number of milliseconds to wait before the next event.
+     *
+     * @param now the number of milliseconds since the simulation started.
+     */
+    long next(long now);
+
+    /**
+     * Returns a Poisson process, whose lapses are exponentially distributed
+     * with the specified mean rate.
+     *
+     * @param perHour the mean number of events per hour, which must be
+     *                positive.
+     */
+    static Lapses poisson(double perHour, SplittableRandom random) {
+        final double perMilli = perHour / 3600000.0;
+        return now -> (long) exponential(perMilli, random);
+    }
+
+    /**
+     * Returns a Poisson process whose rate varies with the time of day,
+     * following the specified curve.
+     *
+     * The period is divided into equal slots, one per rate, and the rate is
+     * constant within each slot; the curve repeats every period.
+     * Lapses are generated by thinning a process at the highest rate.
+     *
+     * @param perHour the mean number of events per hour in each slot, which
+     *                must not be negative and must not all be 0.
+     * @param period the length of the curve in milliseconds.
+     */
+    static Lapses curve(double[] perHour,
+                        long period,
+                        SplittableRandom random) {
+        final double[] perMilli = new double[perHour.length];
+        for (int i = 0; i < perHour.length; i += 1) {
+            perMilli[i] = perHour[i] / 3600000.0;
+        }
+        final double max = Arrays.stream(perMilli).max().orElse(0);
+        return now -> {
+            double time = now;
+            while (true) {
+                time += exponential(max, random);
+                final int slot = (int) ((long) time % period
+                        * perMilli.length / period);
+                if (random.nextDouble() * max < perMilli[slot]) {
+                    return (long) time - now;
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns a process which replays the specified times, such as the
+     * times recorded by a real gate.
+     *
+     * Once every time has been replayed, the times are replayed again,
+     * shifted by the last time, so the process never runs out.
+     *
+     * @param times the times of events in milliseconds since the start,
+     *              in ascending order; must not be empty.
+     */
+    static Lapses replay(long[] times) {
+        final long span = Math.max(1, times[times.length - 1]);
+        return new Lapses() {
+            // The index of the next time to replay, and the amount by which
+            // the times are currently shifted.
+            private int next = 0;
+            private long offset = 0;
+
+            @Override
+            public long next(long now) {
+                if (next == times.length) {
+                    next = 0;
+                    offset += span;
+                }
+                final long time = offset + times[next];
+                next += 1;
+                return Math.max(0, time - now);
+            }
+        };
+    }
+
+    // Returns a random number from an exponential distribution with the
+    // specified rate.
+    static double exponential(double rate, SplittableRandom random) {
+        return Math.log(1.0 - random.nextDouble()) / -rate;
+    }
+}
@@ -5,8 +5,6 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
-import static java.lang.Thread.sleep;
-
 /**
  * A single resource-like object with an arbitrary but constant number of
  * exits and entrances.
@@ -23,74 +21,166 @@ import static java.lang.Thread.sleep;
  * The class is generic because it can be for free, but in the swen90004 carpark
  * simulation, T is always Car.
  *
+ * As an Elevator, the lift has a single cabin, whose index is always 0.
+ * It is moved by an Operator.
+ *
+ * The cabin carries up to Param#liftCapacity items at once, all going to
+ * the same level.
+ * Once the first item of a batch is loaded, the doors stay open for more
+ * until the cabin is full or Param#liftDwell milliseconds have passed,
+ * whichever is first; the batch then leaves when a caller at its
+ * destination takes ownership of it, and each item is unloaded in the
+ * order it was loaded.
+ * With a capacity of more than 1, the doors are closed by the process
+ * returned by #doors().
+ *
  * See the implemented interface for documentation on overridden methods.
  */
-class Lift<T> {
+class Lift<T> implements Elevator<T> {
+
+    // The index of the lift's only cabin.
+    private static final int CABIN = 0;
 
     // The lift has a number of levels equal to nLevels,
     // but at any given time is only available at the current level.
     private final int nLevels;
-    private int currentLevel = 0;
+    private volatile int currentLevel = 0;
 
     // A human readable identifier for the lift.
     private final String name;
 
+    // Determines how long the lift takes to change level.
+    private final Param param;
+
+    // Used for delaying the lift while it changes level.
+    private final Scheduler scheduler;
+
+    // Versions the observable state of the car park, including the lift's.
+    private final Version version;
+
+    // The maximum number of items in a batch, and how long to wait for
+    // more items after the first is loaded.
+    private final int capacity;
+    private final long dwell;
+
     // Used for tracking the 'state' of the lift; since channels don't allow
     // observation of their contents without retrieving it, this variable is
-    // required to allow the printing of state.
-    // Items are stored in this variable when they are put into the lift,
-    // and removed from this variable when they are gotten from the lift.
-    private T item = null;
+    // required to allow the observation of state.
+    // Items are added to this list when they are put into the lift, and
+    // removed from it when they are gotten from the lift, both by vehicles
+    // which are changing the observable state.
+    // The list is replaced rather than changed, so it can be read by any
+    // thread; it is only replaced while holding this lift's monitor.
+    private volatile List<T> items = Collections.emptyList();
 
     // When the lift is unavailable, all channels have no messages in them.
     // When the lift is available at level X, then:
-    // * if the lift has no item, `empty[X]` has a message in it.
-    // * if the lift has an item, `full[X]` has a message in it.
+    // * if the lift's doors are open for loading, `empty[X]` has a message
+    //   in it, unless a caller owns it to load an item.
+    // * if the lift has an item going to level X, `full[X]` has a message in
+    //   it, unless a caller owns it to unload an item.
     private final List<Channel<Object>> empty;
     private final List<Channel<T>> full;
 
+    // The state of the current batch, guarded by this lift's monitor:
+    // the number of batches begun, whether the doors are open for more
+    // items, the time at which they close regardless, and the number of
+    // callers which own an item being unloaded.
+    private int batch = 0;
+    private boolean open = false;
+    private long deadline = 0;
+    private int unloading = 0;
+
+    // Whether the current batch has arrived at its destination.
+    // Only accessed by the caller which owns the batch's next item.
+    private boolean arrived = false;
+
+    // Has a message in it when the doors have closed on the current batch,
+    // so that it may leave.
+    private final Channel<Object> closed;
+
+    // Has a message in it when a batch has begun since the doors process
+    // last looked.
+    private final Channel<Object> begun;
+
     // When the lift is being waited for on level X, reservations[X] is true,
     // otherwise it is false.
     // This allows the lift to tell the operator whether the it needs to move,
     // and if so, where it needs to move to,
+    // Guarded by this lift's monitor.
     private final boolean[] reservations;
 
-    /** Constructs a lift with the specified name and number of levels. */
-    Lift(int nLevels, String name) {
+    // When the lift is not reserved on level X, `unreserved[X]` has a message
+    // in it; taking the message is what allows a caller to reserve the lift.
+    // Using channels rather than the lift's monitor means that waiting for a
+    // reservation never blocks a whole carrier thread or scheduler.
+    private final List<Channel<Object>> unreserved;
+
+    // Has a message in it when the lift has been reserved or made available
+    // since the operator last checked it, allowing an Operator to wait for
+    // these transitions rather than polling.
+    private final Channel<Object> changed;
+
+    /**
+     * Constructs a lift with the specified name and number of levels,
+     * which uses the specified scheduler for its channels and delays.
+     *
+     * @param version the version of the observable state of the car park,
+     *                which is changed whenever the lift changes level.
+     */
+    Lift(int nLevels,
+         String name,
+         Param param,
+         Scheduler scheduler,
+         Version version) {
         this.nLevels = nLevels;
         this.name = name;
+        this.param = param;
+        this.scheduler = scheduler;
+        this.version = version;
+        this.capacity = param.liftCapacity;
+        this.dwell = param.liftDwell;
+        closed = scheduler.newChannel();
+        begun = scheduler.newChannel();
 
         // Make the lift empty and available at level 0.
         // It should be impossible for this call to wait, because it is
         // a fresh channel.
-        empty = channels(nLevels);
-        full = channels(nLevels);
+        empty = channels(nLevels, scheduler);
+        full = channels(nLevels, scheduler);
+        unreserved = channels(nLevels, scheduler);
+        changed = scheduler.newChannel();
         try {
             empty.get(0).put(new Object());
+
+            // Make the lift unreserved on every level.
+            for (final Channel<Object> channel : unreserved) {
+                channel.put(new Object());
+            }
         } catch (InterruptedException e) {
             throw new RuntimeException("Unexpected wait", e);
         }
 
-        // Make the lift unreserved; boolean arrays default to all false.
+        // Boolean arrays default to all false.
         reservations = new boolean[nLevels];
     }
 
     // Returns an unmodifiable list of n channels with the specified content
     // type.
-    private static <S> List<Channel<S>> channels(int n) {
+    private static <S> List<Channel<S>> channels(int n, Scheduler scheduler) {
         final List<Channel<S>> channels = new ArrayList<>(n);
         for (int i = 0; i < n; i += 1) {
-            channels.add(new Channel<>());
+            channels.add(scheduler.<S>newChannel());
         }
         return Collections.unmodifiableList(channels);
     }
 
     /**
-     * Waits Param.OPERATE_TIME milliseconds then makes the lift available at
+     * Waits Param#operateTime milliseconds then makes the lift available at
      * the specified level.
      *
      * If the lift is already at the specified level, then the
-     * Param.OPERATE_TIME wait does not occur.
+     * Param#operateTime wait does not occur.
      *
      * If the lift is already available at the specified level, waits until it
      * is unavailable at that level.
@@ -104,24 +194,100 @@ class Lift<T> {
     void makeAvailable(int level) throws InterruptedException {
         setCurrentLevel(level);
         empty.get(level).put(new Object());
+        signalChange();
+    }
+
+    /**
+     * Waits until the lift has been reserved or made available since this
+     * method last returned.
+     *
+     * Intended for a single Operator, which should check
+     * {@link #nextReservation()} whenever this method returns.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    void awaitChange() throws InterruptedException {
+        changed.get();
+    }
+
+    // Records that the lift has been reserved or made available, unless
+    // this has already been recorded since the operator last checked.
+    private void signalChange() {
+        changed.putIfEmpty(new Object());
     }
 
     /**
      * Puts the specified item in the lift at the specified destination level.
      *
-     * Waits for the lift to not be full at the specified level;
-     * if ownership is respected, this method should never wait.
+     * If the item is the first of a batch, the batch becomes ready to be
+     * unloaded at the destination.
+     * The doors then stay open for more items, unless the lift is now full,
+     * or they were closed while the item was being loaded.
+     * Every item of a batch must go to the same level.
      *
-     * Does not move the lift or wait for Param.OPERATE_TIME; this occurs
+     * Does not move the lift or wait for Param#operateTime; this occurs
      * when a caller takes ownership of the lift at that level instead.
      *
      * @param level the level at which to put the item
      * @param item the item to put at that level
-     * @throws InterruptedException if the thread is interrupted while waiting.
      */
-    void put(int level, T item) throws InterruptedException {
-        this.item = item;
-        full.get(level).put(item);
+    synchronized void put(int level, T item) {
+        final List<T> items = new ArrayList<>(this.items);
+        items.add(item);
+        this.items = Collections.unmodifiableList(items);
+        if (items.size() == 1) {
+            batch += 1;
+            open = true;
+            deadline = scheduler.now() + dwell;
+            full.get(level).putIfEmpty(item);
+            if (capacity > 1) {
+                begun.putIfEmpty(new Object());
+            }
+        }
+        if (open && items.size() < capacity) {
+            empty.get(currentLevel).putIfEmpty(new Object());
+        } else {
+            open = false;
+            closed.putIfEmpty(new Object());
+        }
+    }
+
+    /**
+     * Returns a process which closes the doors of each batch once
+     * Param#liftDwell milliseconds have passed since its first item was
+     * loaded, unless they were already closed because the lift was full.
+     *
+     * Only needed if Param#liftCapacity is more than 1.
+     */
+    Runnable doors() {
+        return () -> {
+            while (true) {
+                try {
+                    begun.get();
+                    final int batch;
+                    final long deadline;
+                    synchronized (this) {
+                        batch = this.batch;
+                        deadline = this.deadline;
+                    }
+                    scheduler.sleep(Math.max(0, deadline - scheduler.now()));
+                    close(batch);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(
+                            "Lift doors stopped; they were interrupted!", e);
+                }
+            }
+        };
+    }
+
+    // Closes the doors on the specified batch, if they are still open.
+    // If a caller is loading an item, the doors close once it is loaded.
+    private synchronized void close(int batch) {
+        if (batch != this.batch || !open) return;
+        open = false;
+        if (empty.get(currentLevel).getIfReady().isPresent()) {
+            closed.putIfEmpty(new Object());
+        }
     }
 
     /**
@@ -137,7 +303,7 @@ class Lift<T> {
      * or not at all; otherwise Optional.of(level) where level is the level at
      * which the lift is reserved.
      */
-    Optional<Integer> nextReservation() {
+    synchronized Optional<Integer> nextReservation() {
         // Check if the lift is empty and take ownership of its emptiness if so.
         final Optional<Object> emptyMessage =
                 empty.get(currentLevel).getIfReady();
@@ -149,7 +315,9 @@ class Lift<T> {
         // If the lift is not reserved on its current level and it is reserved
         // on a different level, then return that other level, keeping ownership
         // of the lift's emptiness.
-        if (!reservations[currentLevel]) {
+        // A lift whose doors are open for a batch isn't empty, so it must
+        // stay where it is.
+        if (items.isEmpty() && !reservations[currentLevel]) {
             for (int i = 0; i < nLevels; i += 1) {
                 if (reservations[i]) {
                     return Optional.of(i);
@@ -189,33 +357,43 @@ class Lift<T> {
     }
 
     /**
-     * Retrieves the item from the lift, assuming it is owned by the caller.
+     * Retrieves the next item from the lift, assuming it is owned by the
+     * caller.
      *
      * The caller must guarantee that they have ownership of the lift
      * and that they have not already retrieved the item.
      *
-     * The lift is made empty by this method, but ownership is not relinquished.
+     * The item is removed from the lift by this method, and the next item of
+     * the batch, if any, may be unloaded by another caller, but ownership is
+     * not relinquished.
      *
-     * @return the item in the lift.
+     * @return the next item in the lift.
      */
-    T getNow() {
-        final T item = this.item;
-        this.item = null;
+    synchronized T getNow() {
+        final T item = items.get(0);
+        items = Collections.unmodifiableList(
+                new ArrayList<>(items.subList(1, items.size())));
+        if (!items.isEmpty()) {
+            full.get(currentLevel).putIfEmpty(items.get(0));
+        }
         return item;
     }
 
     /**
      * Waits until an item is present in the lift and going to the specified
-     * level, waits Param.OPERATE_TIME milliseconds, then takes ownership of the
+     * level, waits Param#operateTime milliseconds, then takes ownership of the
      * lift and sets its level to the specified level without retrieving the
      * item.
      *
      * If the lift is already at the specified level, then the
-     * Param.OPERATE_TIME wait does not occur.
+     * Param#operateTime wait does not occur.
+     * For the first item of a batch, the lift also waits for its doors to
+     * close before leaving.
      *
-     * The lift guarantees that only one caller may take ownership at a time.
+     * The lift guarantees that only one caller may take ownership of each
+     * item at a time.
      *
-     * The method waits for Param.OPERATE_TIME milliseconds, then sets its level
+     * The method waits for Param#operateTime milliseconds, then sets its level
      * to the specified level.
      *
      * @throws InterruptedException if the thread is interrupted while waiting
@@ -223,44 +401,112 @@ class Lift<T> {
      */
     void acquireWhenFull(int level) throws InterruptedException {
         full.get(level).get();
-        setCurrentLevel(level);
+        if (!arrived) {
+            closed.get();
+            setCurrentLevel(level);
+            arrived = true;
+        }
+        synchronized (this) {
+            unloading += 1;
+        }
     }
 
     // Waits until the lift is not reserved at the specified level, then
     // reserves it at that level.
-    private synchronized void reserve(int level) throws InterruptedException {
-        while (reservations[level]) {
-            wait();
+    // The reservation is recorded under the lift's monitor, since
+    // #nextReservation reads it there; the wait happens outside it.
+    private void reserve(int level) throws InterruptedException {
+        unreserved.get(level).get();
+        synchronized (this) {
+            reservations[level] = true;
         }
-        reservations[level] = true;
+        signalChange();
     }
 
     // Releases the reservation of the lift at the specified level.
-    private synchronized void release(int level) {
-        assert(reservations[level]);
-        reservations[level] = false;
-        notifyAll();
+    // This call should never wait if ownership is respected.
+    private void release(int level) throws InterruptedException {
+        synchronized (this) {
+            assert(reservations[level]);
+            reservations[level] = false;
+        }
+        unreserved.get(level).put(new Object());
     }
 
-    // Sets the current level of the lift, waiting Param.OPERATE_TIME for the
+    // Sets the current level of the lift, waiting Param#operateTime for the
     // lift's level to change.
     private void setCurrentLevel(int currentLevel) throws InterruptedException {
-        if (currentLevel != this.currentLevel) {
-            sleep(Param.OPERATE_TIME);
-        }
+        if (currentLevel == this.currentLevel) return;
+        Trace.record(Trace.Event.LIFT_MOVE, null, currentLevel, CABIN);
+        scheduler.sleep(param.operateTime);
+        version.beginWrite();
         this.currentLevel = currentLevel;
+        version.endWrite();
+        Trace.record(Trace.Event.LIFT_ARRIVE, null, currentLevel, CABIN);
+    }
+
+    @Override
+    public int acquireCabinWhenEmpty(int level) throws InterruptedException {
+        acquireWhenEmpty(level);
+        return CABIN;
+    }
+
+    @Override
+    public void put(int cabin, int level, T item) throws InterruptedException {
+        put(level, item);
+    }
+
+    @Override
+    public int acquireCabinWhenFull(int level) throws InterruptedException {
+        acquireWhenFull(level);
+        return CABIN;
+    }
+
+    @Override
+    public T getNow(int cabin) {
+        return getNow();
+    }
+
+    @Override
+    public void makeAvailable(int cabin, int level)
+            throws InterruptedException {
+        // The lift is only available again once every item of the batch
+        // has been unloaded.
+        synchronized (this) {
+            unloading -= 1;
+            if (unloading > 0 || !items.isEmpty()) return;
+        }
+        arrived = false;
+        makeAvailable(level);
     }
 
     /**
-     * A human readable representation of the lift's state at a specific level.
+     * Returns the level at which the lift currently is.
      *
-     * @param level the level of interest
-     * @return an empty string if the lift is not at the specified level,
-     * otherwise a representation of the lift's state.
+     * The result is only stable while the caller has ownership of the lift.
      */
-    String state(int level) {
-        return (this.currentLevel != level) ? ""
-                : String.format("{%8s:%6s}", this, item);
+    int currentLevel() {
+        return currentLevel;
+    }
+
+    @Override
+    public int cabins() {
+        return 1;
+    }
+
+    @Override
+    public String name(int cabin) {
+        return name;
+    }
+
+    @Override
+    public int level(int cabin) {
+        return currentLevel;
+    }
+
+    @Override
+    public List<T> items(int cabin) {
+        return items;
     }
 
     @Override
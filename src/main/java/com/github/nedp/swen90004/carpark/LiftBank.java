@@ -0,0 +1,406 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * An Elevator with several cabins shared across all levels, each of which
+ * moves independently, and a dispatcher which assigns waiting callers to
+ * cabins.
+ *
+ * Responsible for:
+ * <ul>
+ *     <li>recording requests for an empty cabin at each level</li>
+ *     <li>assigning each request to an idle cabin according to a Dispatch
+ *     policy, as soon as both are available, rather than polling</li>
+ *     <li>moving each assigned cabin to its request's level, concurrently
+ *     with the other cabins</li>
+ *     <li>queueing loaded cabins at their destination levels until they are
+ *     unloaded</li>
+ * </ul>
+ *
+ * The dispatcher and the cabins' operators are processes; see
+ * {@link #processes()}.
+ *
+ * Bookkeeping is synchronised on the bank itself, but no thread ever waits
+ * while holding its monitor; all waiting is done on channels.
+ *
+ * See the implemented interface for documentation on overridden methods.
+ */
+class LiftBank<T> implements Elevator<T> {
+
+    /** The policies by which requests may be assigned to idle cabins. */
+    enum Dispatch {
+        /** Assign the idle cabin and request which are closest together. */
+        NEAREST,
+        /**
+         * Assign each idle cabin the closest request in the direction it
+         * last travelled, reversing when there are none (the elevator
+         * algorithm).
+         */
+        SCAN,
+        /**
+         * Assign the idle cabin which has made the fewest trips, breaking
+         * ties by distance, to spread wear and load evenly.
+         */
+        BALANCED;
+    }
+
+    // A human readable identifier for the bank.
+    private final String name;
+
+    // The number of levels served by the bank.
+    private final int nLevels;
+
+    // Determines how long cabins take to change level.
+    private final Param param;
+
+    // Used for channels and for delaying cabins while they move.
+    private final Scheduler scheduler;
+
+    // Versions the observable state of the car park, including the cabins'.
+    private final Version version;
+
+    // The policy by which requests are assigned to idle cabins.
+    private final Dispatch dispatch;
+
+    // The cabins of the bank.
+    private final List<Cabin> cabins;
+
+    // The number of callers waiting for an empty cabin at each level which
+    // have not yet been assigned one.
+    private final int[] requests;
+
+    // When a cabin has been assigned to a request at level X and has arrived
+    // there, its index is sent through `arrived[X]`.
+    private final List<Channel<Integer>> arrived;
+
+    // The indices of the cabins which have been loaded with an item going
+    // to each level, in the order they were loaded.
+    // Queued rather than sent through a channel, so that loading a cabin
+    // never waits, however many cabins are going to the same level.
+    private final List<Queue<Integer>> loaded;
+
+    // When at least one cabin is queued in `loaded[X]`, `unloadable[X]` has
+    // a message in it.
+    private final List<Channel<Object>> unloadable;
+
+    // Has a message in it when the dispatcher may have something to assign.
+    private final Channel<Object> wakeUp;
+
+    /**
+     * Constructs a bank of the specified number of cabins, all empty and
+     * idle at level 0.
+     *
+     * @param nCabins the number of cabins in the bank.
+     * @param nLevels the number of levels served by the bank.
+     * @param name a human readable identifier for the bank.
+     * @param dispatch the policy for assigning requests to cabins.
+     * @param version the version of the observable state of the car park,
+     *                which is changed whenever a cabin changes level.
+     */
+    LiftBank(int nCabins,
+             int nLevels,
+             String name,
+             Dispatch dispatch,
+             Param param,
+             Scheduler scheduler,
+             Version version) {
+        this.nLevels = nLevels;
+        this.name = name;
+        this.dispatch = dispatch;
+        this.param = param;
+        this.scheduler = scheduler;
+        this.version = version;
+
+        final List<Cabin> cabins = new ArrayList<>(nCabins);
+        for (int i = 0; i < nCabins; i += 1) {
+            cabins.add(new Cabin(i));
+        }
+        this.cabins = Collections.unmodifiableList(cabins);
+        requests = new int[nLevels];
+        arrived = channels(nLevels, scheduler);
+        final List<Queue<Integer>> loaded = new ArrayList<>(nLevels);
+        for (int i = 0; i < nLevels; i += 1) {
+            loaded.add(new ArrayDeque<>());
+        }
+        this.loaded = Collections.unmodifiableList(loaded);
+        unloadable = channels(nLevels, scheduler);
+        wakeUp = scheduler.newChannel();
+    }
+
+    // Returns an unmodifiable list of n channels with the specified content
+    // type.
+    private static <S> List<Channel<S>> channels(int n, Scheduler scheduler) {
+        final List<Channel<S>> channels = new ArrayList<>(n);
+        for (int i = 0; i < n; i += 1) {
+            channels.add(scheduler.<S>newChannel());
+        }
+        return Collections.unmodifiableList(channels);
+    }
+
+    /**
+     * Returns the processes which operate the bank, by name: the dispatcher,
+     * followed by one operator per cabin.
+     *
+     * Each must be started for the bank to work.
+     */
+    Map<String, Runnable> processes() {
+        final Map<String, Runnable> processes = new LinkedHashMap<>();
+        processes.put("dispatcher", this::dispatchContinuously);
+        for (final Cabin cabin : cabins) {
+            processes.put("operator " + cabin.index, cabin::operate);
+        }
+        return processes;
+    }
+
+    @Override
+    public int acquireCabinWhenEmpty(int level) throws InterruptedException {
+        synchronized (this) {
+            requests[level] += 1;
+        }
+        wakeDispatcher();
+        return arrived.get(level).get();
+    }
+
+    @Override
+    public void put(int cabin, int level, T item) throws InterruptedException {
+        cabins.get(cabin).item = item;
+        synchronized (this) {
+            loaded.get(level).add(cabin);
+            unloadable.get(level).putIfEmpty(new Object());
+        }
+    }
+
+    /**
+     * Waits until a cabin has an item going to the specified level, then
+     * waits Param#operateTime milliseconds for it to move there if it is not
+     * already there, and takes ownership of it.
+     */
+    @Override
+    public int acquireCabinWhenFull(int level) throws InterruptedException {
+        unloadable.get(level).get();
+        final int index;
+        synchronized (this) {
+            index = loaded.get(level).remove();
+            if (!loaded.get(level).isEmpty()) {
+                unloadable.get(level).putIfEmpty(new Object());
+            }
+        }
+        cabins.get(index).moveTo(level);
+        return index;
+    }
+
+    @Override
+    public T getNow(int cabin) {
+        final Cabin c = cabins.get(cabin);
+        final T item = c.item;
+        c.item = null;
+        return item;
+    }
+
+    @Override
+    public void makeAvailable(int cabin, int level)
+            throws InterruptedException {
+        synchronized (this) {
+            cabins.get(cabin).isIdle = true;
+        }
+        wakeDispatcher();
+    }
+
+    // Tells the dispatcher that it may have something to assign, unless it
+    // has already been told.
+    private void wakeDispatcher() {
+        wakeUp.putIfEmpty(new Object());
+    }
+
+    // Repeatedly waits until it may have something to assign, then assigns
+    // as many requests to cabins as possible.
+    private void dispatchContinuously() {
+        while (true) {
+            try {
+                wakeUp.get();
+                Assignment assignment;
+                while ((assignment = assign()) != null) {
+                    assignment.cabin.orders.put(assignment.level);
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(
+                        "Dispatcher stopped; it was interrupted!", e);
+            }
+        }
+    }
+
+    // Chooses an idle cabin for a request according to the dispatch policy
+    // and marks it as assigned, or returns null if there are no idle cabins
+    // or no requests.
+    private synchronized Assignment assign() {
+        Assignment best = null;
+        for (final Cabin cabin : cabins) {
+            if (!cabin.isIdle) continue;
+            final Assignment candidate = (dispatch == Dispatch.SCAN)
+                    ? cabin.scan() : cabin.nearest();
+            if (candidate != null && candidate.isBetterThan(best)) {
+                best = candidate;
+            }
+        }
+        if (best == null) return null;
+
+        requests[best.level] -= 1;
+        best.cabin.isIdle = false;
+        best.cabin.trips += 1;
+        if (best.level != best.cabin.level) {
+            best.cabin.direction = (best.level > best.cabin.level) ? 1 : -1;
+        }
+        return best;
+    }
+
+    // A candidate assignment of a cabin to a request at a level.
+    private final class Assignment {
+        private final Cabin cabin;
+        private final int level;
+
+        private Assignment(Cabin cabin, int level) {
+            this.cabin = cabin;
+            this.level = level;
+        }
+
+        private int distance() {
+            return Math.abs(level - cabin.level);
+        }
+
+        // Returns true if this assignment should be preferred to the other
+        // assignment, which may be null.
+        private boolean isBetterThan(Assignment other) {
+            if (other == null) return true;
+            if (dispatch == Dispatch.BALANCED
+                    && cabin.trips != other.cabin.trips) {
+                return cabin.trips < other.cabin.trips;
+            }
+            return distance() < other.distance();
+        }
+    }
+
+    // A single cabin of the bank.
+    // Its level, item and idleness are accessed under the bank's monitor or
+    // by the cabin's current owner.
+    private final class Cabin {
+        private final int index;
+
+        // The levels to which the dispatcher has ordered the cabin.
+        private final Channel<Integer> orders = scheduler.newChannel();
+
+        // The observable state of the cabin.
+        // The item is changed by vehicles which are changing the observable
+        // state, and the level is changed by #moveTo.
+        private volatile int level = 0;
+        private volatile T item = null;
+        private boolean isIdle = true;
+        private int trips = 0;
+
+        // The direction the cabin last travelled; 1 for up, -1 for down.
+        private int direction = 1;
+
+        private Cabin(int index) {
+            this.index = index;
+        }
+
+        // Returns an assignment to the closest level with a request,
+        // or null if there are none.
+        private Assignment nearest() {
+            Assignment best = null;
+            for (int i = 0; i < nLevels; i += 1) {
+                if (requests[i] == 0) continue;
+                final Assignment candidate = new Assignment(this, i);
+                if (best == null || candidate.distance() < best.distance()) {
+                    best = candidate;
+                }
+            }
+            return best;
+        }
+
+        // Returns an assignment to the closest level with a request in the
+        // direction the cabin last travelled, or in the other direction if
+        // there are none, or null if there are no requests at all.
+        private Assignment scan() {
+            for (final int d : new int[]{direction, -direction}) {
+                for (int i = level; i >= 0 && i < nLevels; i += d) {
+                    if (requests[i] > 0) return new Assignment(this, i);
+                }
+            }
+            return null;
+        }
+
+        // Repeatedly waits for an order from the dispatcher, moves to the
+        // ordered level, and gives the cabin to the waiting caller there.
+        private void operate() {
+            while (true) {
+                try {
+                    final int destination = orders.get();
+                    if (destination != level) {
+                        Logger.logEvent("%s goes %s", this,
+                                (destination < level) ? "down" : "up");
+                        moveTo(destination);
+                        Logger.logEvent("%s arrives", this);
+                    }
+                    arrived.get(destination).put(index);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(String.format(
+                            "Operator of %s stopped; it was interrupted!",
+                            this), e);
+                }
+            }
+        }
+
+        // Waits Param#operateTime milliseconds for the cabin to move to the
+        // specified level, unless it is already there.
+        private void moveTo(int destination) throws InterruptedException {
+            if (destination == level) return;
+            Trace.record(Trace.Event.LIFT_MOVE, null, destination, index);
+            scheduler.sleep(param.operateTime);
+            synchronized (LiftBank.this) {
+                version.beginWrite();
+                level = destination;
+                version.endWrite();
+            }
+            Trace.record(Trace.Event.LIFT_ARRIVE, null, destination, index);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %d", name, index);
+        }
+    }
+
+    @Override
+    public int cabins() {
+        return cabins.size();
+    }
+
+    @Override
+    public String name(int cabin) {
+        return cabins.get(cabin).toString();
+    }
+
+    @Override
+    public int level(int cabin) {
+        return cabins.get(cabin).level;
+    }
+
+    @Override
+    public List<T> items(int cabin) {
+        final T item = cabins.get(cabin).item;
+        return (item == null) ? Collections.<T>emptyList()
+                : Collections.singletonList(item);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -14,8 +14,21 @@ package com.github.nedp.swen90004.carpark;
  */
 class LiftResource implements Resource<Car> {
 
-    // The Lift via which this LiftResource goes.
-    private final Lift<Car> lift;
+    // The Elevator via which this LiftResource goes.
+    private final Elevator<Car> lift;
+
+    // The cabins of the elevator currently owned by the vehicles putting
+    // cars into this LiftResource and getting cars from it.
+    // `getCabin` is only accessed by a single vehicle, since each vehicle
+    // getting cars from the lift has its own LiftResource.
+    // Several vehicles may put cars in (one per entrance), so `putCabin`
+    // relies on only one caller at a time being between #acquireWhenEmpty
+    // and #put: a Lift's empty channel lets one caller through until it puts
+    // its car, and a LiftBank carries one car per cabin, so it is only used
+    // through GuardedLiftResources with a budget of 1, whose vacant token
+    // lets one car set off at a time.
+    private int putCabin;
+    private int getCabin;
 
     // The level which the lift must be at to put a car into this LiftResource.
     private final int putIndex;
@@ -33,13 +46,13 @@ class LiftResource implements Resource<Car> {
     /**
      * Constructs a new LiftResource without performing any actions.
      *
-     * @param lift the Lift by which this LiftResource is backed.
+     * @param lift the Elevator by which this LiftResource is backed.
      * @param putIndex the index of the lift at which Cars should put into the
      *                 lift.
      * @param getIndex the index of the lift at which Cars should be gotten
      *                 from the lift.
      */
-    LiftResource(Lift<Car> lift, int putIndex, int getIndex) {
+    LiftResource(Elevator<Car> lift, int putIndex, int getIndex) {
         this.lift = lift;
         this.putIndex = putIndex;
         this.getIndex = getIndex;
@@ -54,29 +67,37 @@ class LiftResource implements Resource<Car> {
 
     @Override
     public void makeAvailable() throws InterruptedException {
-        lift.makeAvailable(getIndex);
+        lift.makeAvailable(getCabin, getIndex);
     }
 
     @Override
     public void acquireWhenFull() throws InterruptedException {
-        this.lift.acquireWhenFull(getIndex);
+        getCabin = this.lift.acquireCabinWhenFull(getIndex);
     }
 
     @Override
     public void put(Car item) throws InterruptedException {
+        item.stamp();
         Logger.logEvent("%s enters %s %s", item, lift, direction);
-        lift.put(getIndex, item);
+        Trace.record(Trace.Event.ENTER_LIFT, item, getIndex, putCabin);
+        lift.put(putCabin, getIndex, item);
     }
 
     @Override
     public void acquireWhenEmpty() throws InterruptedException {
-        lift.acquireWhenEmpty(putIndex);
+        putCabin = lift.acquireCabinWhenEmpty(putIndex);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s from %d to %d", lift, putIndex, getIndex);
     }
 
     @Override
     public Car getNow() {
-        final Car item = this.lift.getNow();
+        final Car item = this.lift.getNow(getCabin);
         Logger.logEvent("%s exits %s", item, lift);
+        Trace.record(Trace.Event.EXIT_LIFT, item, getIndex, getCabin);
         return item;
     }
 }
@@ -0,0 +1,246 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Formatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded ring buffer of log records, drained by a single writer thread.
+ *
+ * Responsible for:
+ * <ul>
+ *     <li>accepting records from any number of threads without holding a
+ *     lock, and without allocating once the buffer is warm</li>
+ *     <li>formatting the records on the writer thread, in the order they
+ *     were accepted</li>
+ *     <li>writing the formatted text in batches, flushing whenever the
+ *     buffer runs dry</li>
+ * </ul>
+ *
+ * Formatting is deferred, so the arguments of a record must not change
+ * their string representation after it is accepted.
+ * Threads which log while the buffer is full wait for the writer to catch
+ * up, rather than dropping records.
+ */
+class LogBuffer {
+
+    // The number of records the buffer can hold; must be a power of 2.
+    private static final int CAPACITY = 1 << 14;
+
+    // The number of characters to format before writing them out.
+    private static final int BATCH = 1 << 13;
+
+    // How long a thread waits before checking again if the buffer has space.
+    private static final long SPACE_WAIT_NANOS = 10000;
+
+    // A slot in the ring.
+    // The fields other than `published` are written only by the thread which
+    // claimed the slot, and are published to the writer by the following
+    // write to `published`.
+    private static final class Record {
+        // One more than the sequence number of the record in the slot, or 0
+        // if no record has been published in it yet.
+        private volatile long published = 0;
+
+        private String format;
+        private boolean newline;
+        private int arity;
+        private Object a0;
+        private Object a1;
+        private Object a2;
+        private Object[] arguments;
+    }
+
+    private final Record[] ring = new Record[CAPACITY];
+
+    // The sequence number to be claimed by the next record.
+    private final AtomicLong claimed = new AtomicLong(0);
+
+    // The sequence number of the next record to be formatted; every slot
+    // before it is free.
+    private volatile long consumed = 0;
+
+    // The number of records which have been formatted and flushed.
+    private volatile long flushed = 0;
+
+    // True while the writer is (about to be) parked waiting for records.
+    private volatile boolean idle = false;
+
+    private volatile boolean stopped = false;
+
+    // Whether writing has failed; accessed only by the writer thread.
+    private boolean failed = false;
+
+    private final Writer out;
+    private final Thread writer;
+
+    /**
+     * Constructs a buffer whose records are written to the specified writer,
+     * and starts its writer thread.
+     *
+     * The writer thread is a daemon, so {@link #stop()} must be called for
+     * every record to be written before the JVM exits.
+     */
+    LogBuffer(Writer out) {
+        for (int i = 0; i < CAPACITY; i += 1) {
+            ring[i] = new Record();
+        }
+        this.out = out;
+        writer = new Thread(this::drain, "log writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Accepts a record to be formatted like {@code String.format}.
+     *
+     * Arguments are given inline when there are up to 3 of them, avoiding
+     * a varargs array; otherwise they are given in an array and the inline
+     * arguments are ignored.
+     *
+     * Records are not accepted once the buffer has been stopped, so the
+     * caller can write them some other way instead of losing them; a record
+     * given while the buffer is being stopped may be accepted but not
+     * written.
+     *
+     * @param newline whether a newline should follow the formatted text.
+     * @param arity the number of arguments, or -1 to use the array.
+     * @return true if the record was accepted, or false if the buffer has
+     * been stopped.
+     */
+    boolean log(String format, boolean newline, int arity,
+                Object a0, Object a1, Object a2, Object[] arguments) {
+        if (stopped) return false;
+        final long sequence = claimed.getAndIncrement();
+        while (sequence - consumed >= CAPACITY) {
+            // The writer won't make space once it has stopped.
+            if (stopped) return false;
+            wakeWriter();
+            LockSupport.parkNanos(this, SPACE_WAIT_NANOS);
+        }
+
+        final Record record = ring[(int) sequence & (CAPACITY - 1)];
+        record.format = format;
+        record.newline = newline;
+        record.arity = arity;
+        record.a0 = a0;
+        record.a1 = a1;
+        record.a2 = a2;
+        record.arguments = arguments;
+        record.published = sequence + 1;
+        wakeWriter();
+        return true;
+    }
+
+    // Unparks the writer if it is waiting for records.
+    private void wakeWriter() {
+        if (idle) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Waits until every record accepted before the call has been written
+     * and flushed.
+     */
+    void flush() {
+        final long target = claimed.get();
+        while (flushed < target && writer.isAlive()) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(this, SPACE_WAIT_NANOS);
+        }
+    }
+
+    /**
+     * Writes and flushes every record accepted before the call, then stops
+     * the writer thread.
+     *
+     * Records given after the call are not accepted; see
+     * {@link #log(String, boolean, int, Object, Object, Object, Object[])}.
+     */
+    void stop() {
+        flush();
+        stopped = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Repeatedly formats published records in order, writing them out in
+    // batches, until stopped.
+    private void drain() {
+        final StringBuilder text = new StringBuilder(2 * BATCH);
+        final Formatter formatter = new Formatter(text);
+        final Object[][] inline = {
+                new Object[0], new Object[1], new Object[2], new Object[3]};
+        long next = 0;
+        while (true) {
+            final Record record = ring[(int) next & (CAPACITY - 1)];
+            if (record.published != next + 1) {
+                // The buffer has run dry; write out what we have and wait.
+                write(text, true);
+                flushed = next;
+                if (stopped) return;
+                idle = true;
+                if (record.published != next + 1 && !stopped) {
+                    LockSupport.park(this);
+                }
+                idle = false;
+                continue;
+            }
+
+            // Take the record out of its slot, so the slot can be reused.
+            final String format = record.format;
+            final boolean newline = record.newline;
+            final Object[] arguments;
+            if (record.arity < 0) {
+                arguments = record.arguments;
+            } else {
+                arguments = inline[record.arity];
+                if (record.arity > 0) arguments[0] = record.a0;
+                if (record.arity > 1) arguments[1] = record.a1;
+                if (record.arity > 2) arguments[2] = record.a2;
+            }
+            record.format = null;
+            record.a0 = null;
+            record.a1 = null;
+            record.a2 = null;
+            record.arguments = null;
+            next += 1;
+            consumed = next;
+
+            try {
+                formatter.format(format, arguments);
+            } catch (RuntimeException e) {
+                text.append(format);
+            }
+            // Only the reusable arrays are cleared; a caller's array is
+            // never written to.
+            if (record.arity >= 0) Arrays.fill(arguments, null);
+            if (newline) text.append('\n');
+            if (text.length() >= BATCH) write(text, false);
+        }
+    }
+
+    // Writes out and clears the specified text, flushing the output if
+    // specified.
+    // Failures are reported once, after which the text is discarded.
+    private void write(StringBuilder text, boolean flush) {
+        if (!failed) {
+            try {
+                out.append(text);
+                if (flush) out.flush();
+            } catch (IOException e) {
+                failed = true;
+                System.err.println("Logging failed: " + e.getMessage());
+            }
+        }
+        text.setLength(0);
+    }
+}
@@ -1,50 +1,143 @@
 package com.github.nedp.swen90004.carpark;
 
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.Arrays;
+
 /**
  * A class which logs events and state snapshots.
  *
  * Responsible for knowing whether to output just the event trace,
  * just the textual state snapshots, or both.
+ *
+ * By default, text is formatted and printed synchronously by the logging
+ * thread.
+ * After {@link #startAsync(OutputStream)}, logging only records the format
+ * and arguments in a LogBuffer, and the text is formatted and written in
+ * batches by a separate writer thread; {@link #stop()} must then be called
+ * before exiting for all of it to be written.
+ *
+ * Overloads with up to 3 arguments avoid allocating a varargs array.
  */
 class Logger {
 
-    // We can log either the event trace, state snapshots, or both.
-    private enum LogType {
-        EVENTS, STATE, BOTH;
+    /** We can log either the event trace, state snapshots, both, or neither. */
+    enum LogType {
+        EVENTS, STATE, BOTH, NONE;
     }
     private static LogType LOG_TYPE = LogType.EVENTS;
 
+    // The buffer which records are logged to, or null if logging is
+    // synchronous.
+    private static volatile LogBuffer buffer = null;
+
+    // The value of `arity` for records whose arguments are in an array.
+    private static final int VARARGS = -1;
+
+    /**
+     * Sets what should be logged, for example to silence the logger while
+     * benchmarking.
+     */
+    static void setLogType(LogType logType) {
+        LOG_TYPE = logType;
+    }
+
+    /**
+     * Makes logging asynchronous, writing to the specified stream from a
+     * separate thread.
+     *
+     * @throws IllegalStateException if logging is already asynchronous.
+     */
+    static synchronized void startAsync(OutputStream out) {
+        if (buffer != null) {
+            throw new IllegalStateException("logging is already asynchronous");
+        }
+        buffer = new LogBuffer(new OutputStreamWriter(out));
+    }
+
+    /**
+     * Writes everything which has been logged so far, then makes logging
+     * synchronous again.
+     *
+     * Does nothing if logging is already synchronous.
+     */
+    static synchronized void stop() {
+        final LogBuffer stopping = buffer;
+        if (stopping != null) {
+            // Records logged from now on are printed synchronously rather
+            // than given to a buffer which won't accept them.
+            buffer = null;
+            stopping.stop();
+        }
+    }
+
     /**
      * Logs the specified event text, if event text should be logged.
      *
      * Uses string formatting of the same form as {@code System.out.printf}.
      */
     static void logEvent(String format, Object... arguments) {
-        switch (LOG_TYPE) {
-            case EVENTS:
-            case BOTH:
-                System.out.printf(format + "\n", arguments);
-                break;
-
-            default: // Do nothing
-                break;
+        if (logsEvents()) {
+            log(format, true, VARARGS, null, null, null, arguments);
         }
     }
 
+    static void logEvent(String format, Object a0) {
+        if (logsEvents()) log(format, true, 1, a0, null, null, null);
+    }
+
+    static void logEvent(String format, Object a0, Object a1) {
+        if (logsEvents()) log(format, true, 2, a0, a1, null, null);
+    }
+
+    static void logEvent(String format, Object a0, Object a1, Object a2) {
+        if (logsEvents()) log(format, true, 3, a0, a1, a2, null);
+    }
+
     /**
      * Logs the specified state text, if state snapshots should be logged.
      *
      * Uses string formatting of the same form as {@code System.out.printf}.
      */
     static void logState(String format, Object... arguments) {
-        switch (LOG_TYPE) {
-            case STATE:
-            case BOTH:
-                System.out.printf(format, arguments);
-                break;
-
-            default: // Do nothing
-                break;
+        if (logsState()) {
+            log(format, false, VARARGS, null, null, null, arguments);
+        }
+    }
+
+    static void logState(String format) {
+        if (logsState()) log(format, false, 0, null, null, null, null);
+    }
+
+    static void logState(String format, Object a0) {
+        if (logsState()) log(format, false, 1, a0, null, null, null);
+    }
+
+    // Returns true if event text should be logged.
+    private static boolean logsEvents() {
+        return LOG_TYPE == LogType.EVENTS || LOG_TYPE == LogType.BOTH;
+    }
+
+    /**
+     * Returns true if state snapshots should be logged, so that callers can
+     * avoid computing snapshots which would be discarded.
+     */
+    static boolean logsState() {
+        return LOG_TYPE == LogType.STATE || LOG_TYPE == LogType.BOTH;
+    }
+
+    // Logs a record to the buffer if there is one which accepts it,
+    // otherwise prints it.
+    private static void log(String format, boolean newline, int arity,
+                            Object a0, Object a1, Object a2,
+                            Object[] arguments) {
+        final LogBuffer buffer = Logger.buffer;
+        if (buffer != null
+                && buffer.log(format, newline, arity, a0, a1, a2, arguments)) {
+            return;
         }
+        final Object[] all = (arity == VARARGS) ? arguments
+                : Arrays.copyOf(new Object[]{a0, a1, a2}, arity);
+        System.out.printf(newline ? format + "\n" : format, all);
     }
 }
@@ -1,151 +1,298 @@
-package com.github.nedp.swen90004.carpark;
-
-import java.util.ArrayList;
-import java.util.List;
-
-/**
- * The top-level component of the carpark system simulator.
- */
-class Main {
-
-    // The number of levels (floors) in the capark, including the ground floor.
-    private static final int LEVELS = 2;
-
-    // Generate the lift
-    private final Lift<Car> lift = new Lift<>(LEVELS, "lift");
-
-    // Create a list of car park spaces
-    private final List<Section> sections = new ArrayList<>(Param.SECTIONS);
-
-    // Generate the entrance of the carpark and the lift operator.
-    private final Entrance entrance = new Entrance();
-    private final Operator operator = new Operator<>(lift);
-
-    // Create a list of towing vehicles
-    private final List<Vehicle<Car>> vehicles =
-            new ArrayList<>(Param.SECTIONS + 3);
-
-    private Main() {
-        // Create the exit of the carpark.
-        final Exit<Car> exit = new Exit<>();
-
-        // Generate the individual sections
-        for (Integer i = 0; i < Param.SECTIONS; i += 1) {
-            sections.add(new Section(i));
-        }
-
-        // Create the entrances and exits to the lift.
-        // The raiser should be guarded like in the LTSA model to prevent
-        // deadlocks.
-        final Resource<Car> raiser =
-                new GuardedLiftResource(lift, 0, LEVELS - 1, sections.get(0));
-        final Resource<Car> lowerer = new LiftResource(lift, LEVELS - 1, 0);
-
-        // Generate the towing vehicle which moves new arrivals into the lift.
-        vehicles.add(new Vehicle<>("arrivals", entrance, raiser));
-
-        // Generate the towing vehicle which launches cars from the lift.
-        vehicles.add(new Vehicle<>(
-                "launcher", raiser, sections.get(0)));
-
-        // Generate the regular towing vehicles.
-        for (int i = 1; i < Param.SECTIONS; i += 1) {
-            vehicles.add(new Vehicle<>(
-                    i, sections.get(i - 1), sections.get(i)));
-        }
-
-        // Generate the towing vehicle which loads cars into the lift on
-        // the upper level.
-        vehicles.add(new Vehicle<>(
-                "loader", sections.get(Param.SECTIONS - 1), lowerer));
-
-        // Generate the towing vehicle which removes cars from the lift
-        // so they may depart.
-        vehicles.add(new Vehicle<>("departures", lowerer, exit));
-    }
-
-    private void start() {
-        // Start up all the vehicles and the operator.
-        for (final Vehicle<Car> vehicle : vehicles) {
-            vehicle.start();
-        }
-        operator.start();
-    }
-
-    // Checks whether all threads in the simulation are alive.
-    private boolean isAlive() {
-        // The simulation is dead if the operator is dead.
-        if (!operator.isAlive()) return false;
-
-        // The simulation is dead if any of the vehicles are dead.
-        for (final Vehicle<Car> vehicle : vehicles) {
-            if (!vehicle.isAlive()) return false;
-        }
-        return true;
-    }
-
-    // Draws the state.
-    private void draw() {
-        // Draws the state in the upper level.
-        Logger.logState("%18s", lift.state(LEVELS-1));
-        Logger.logState(vehicles.get(1).state());
-        for (int i = 0; i < sections.size(); i += 1) {
-            Logger.logState(sections.get(i).state());
-            Logger.logState(vehicles.get(i + 2).state());
-        }
-        Logger.logState("%18s\n", lift.state(LEVELS-1));
-
-        // Draws the state in the lower level.
-        // Optimise spacing for 6 sections.
-        Logger.logState("%18s %s %s %73s {exit} <--- %s %18s\n",
-                lift.state(0),
-                vehicles.get(0).state(),
-                entrance.state(),
-                "",
-                vehicles.get(vehicles.size()-1).state(),
-                lift.state(0));
-    }
-
-    private void interrupt() {
-        operator.interrupt();
-        for (final Vehicle<Car> vehicle : vehicles) {
-            vehicle.interrupt();
-        }
-    }
-
-    /**
-     * The driver of the lift/carpark system:
-     *  - creates the components for the system;
-     *  - starts all of the processes;
-     *  - periodically tells components to draw themselves;
-     *  - supervise processes regularly to check all are alive.
-     */
-    public static void main(String [] args) {
-        // Construct the simulation.
-        final Main main = new Main();
-
-        // Start the simulation.
-        main.start();
-
-        // Every frame, check that the simulation is still alive,
-        // then draw all the state.
-        while (main.isAlive()) {
-            // Draw the state.
-            main.draw();
-            // Have a delay between frames.
-            try {
-                Thread.sleep(Param.MAIN_INTERVAL);
-            } catch (InterruptedException e) {
-                System.out.println("Main was interrupted");
-                break;
-            }
-        }
-
-        // If we're here, main is no longer alive and some thread was
-        // interrupted.
-        // Interrupt all the threads and halt.
-        main.interrupt();
-        System.out.println("Main terminates, all threads terminated");
-        System.exit(0);
-    }
-}
+package com.github.nedp.swen90004.carpark;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import javax.management.JMException;
+
+/**
+ * The top-level component of the carpark system simulator.
+ */
+class Main {
+
+    // Command line flags selecting a simulated run, the type of channel and
+    // threads, what to log, where to log and trace to, how often to dump
+    // metrics, the port on which to serve the state, and how long processes
+    // may wait before the watchdog reports them.
+    // All other flags are parameters; see Param#load.
+    private static final String SIMULATE = "--simulate=";
+    private static final String CHANNEL = "--channel=";
+    private static final String THREADS = "--threads=";
+    private static final String VIRTUAL = "virtual";
+    private static final String PLATFORM = "platform";
+    private static final String OUTPUT = "--output=";
+    private static final String LOG = "--log=";
+    private static final String SYNC = "sync";
+    private static final String TRACE = "--trace=";
+    private static final String METRICS = "--metrics=";
+    private static final String SERVE = "--serve=";
+    private static final String WATCHDOG = "--watchdog=";
+
+    // The parameters of the simulation.
+    private final Param param;
+
+    // Controls the passage of time and the execution of processes.
+    private final Scheduler scheduler;
+
+    // The components of the car park.
+    private final CarPark carPark;
+
+    // The measurements of the car park and the interval at which to dump
+    // them, or null if it is not measured.
+    private final Metrics metrics;
+    private final Long metricsInterval;
+
+    // The server streaming the state of the car park, or null if it isn't
+    // served.
+    private final StateServer server;
+
+    // Constructs the simulation, recording a trace to the specified file
+    // unless it is null, measuring it unless the interval is null, and
+    // serving its state on the specified port unless it is null.
+    private Main(Param param,
+                 Scheduler scheduler,
+                 String trace,
+                 Long metricsInterval,
+                 Integer port) throws IOException, JMException {
+        this.param = param;
+        this.scheduler = scheduler;
+        this.metricsInterval = metricsInterval;
+        metrics = (metricsInterval == null) ? null : new Metrics(scheduler);
+        final Topology topology = new Topology(param, scheduler)
+                .metrics(metrics);
+        if (trace != null) {
+            Trace.start(Paths.get(trace), param, topology.route(), scheduler);
+        }
+        carPark = topology.build();
+        if (metrics != null) {
+            metrics.register();
+        }
+        server = (port == null) ? null
+                : new StateServer(carPark, scheduler, port);
+    }
+
+    private void start() {
+        // Start up all the vehicles and the operator.
+        carPark.start();
+
+        // Periodically dump the metrics.
+        if (metrics != null) {
+            scheduler.start("metrics", metrics.dumper(metricsInterval));
+        }
+
+        // Serve the state, publishing changes every frame.
+        if (server != null) {
+            server.start();
+            scheduler.start("publisher",
+                    server.publisher(param.mainInterval));
+            System.err.printf("Serving state at http://localhost:%d/state "
+                    + "and /events%n", server.port());
+        }
+
+        // Every frame, draw all the state, unless nothing would consume it.
+        if (!Logger.logsState()) return;
+        scheduler.start("main", new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    // Draw the state.
+                    carPark.draw();
+                    // Have a delay between frames.
+                    try {
+                        scheduler.sleep(param.mainInterval);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(
+                                "Main was interrupted", e);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * The driver of the lift/carpark system:
+     *  - loads the parameters of the system;
+     *  - creates the components for the system;
+     *  - starts all of the processes;
+     *  - periodically tells components to draw themselves, if state
+     *    snapshots are logged;
+     *  - waits until the scheduler reports that the simulation has finished.
+     *
+     * By default the simulation runs in real time with one thread per process.
+     * With {@code --simulate=<millis>} it instead runs for the specified
+     * amount of simulated time using a discrete-event scheduler, which has a
+     * reproducible event trace when {@code --seed=<seed>} is specified.
+     * The seed is printed to standard error, so a run with an arbitrary
+     * seed can be reproduced too.
+     *
+     * When running in real time, {@code --threads=virtual} runs each process
+     * in a virtual thread instead of the default {@code --threads=platform},
+     * and {@code --channel=atomic} selects lock-free channels instead of
+     * {@code --channel=monitor}.
+     * Virtual threads use lock-free channels unless specified otherwise.
+     * Neither flag may be combined with {@code --simulate}.
+     *
+     * {@code --output=<events|state|both|none>} selects what is logged;
+     * only events by default.
+     * State snapshots are only drawn if they are logged, so by default the
+     * simulation runs headless.
+     *
+     * The log is written to standard output by a separate writer thread;
+     * {@code --log=<file>} writes it to the specified file instead, and
+     * {@code --log=sync} prints it synchronously from each process.
+     * {@code --trace=<file>} also records a binary trace to the specified
+     * file, which can be replayed with Replay.
+     * {@code --metrics=<millis>} measures every resource and vehicle,
+     * exposes the measurements as MBeans, and prints a summary of them to
+     * standard error at the specified interval and at the end.
+     * {@code --serve=<port>} serves the state of the car park as JSON over
+     * HTTP, streaming its changes every frame; see StateServer.
+     * {@code --watchdog=<millis>} reports deadlocked processes, and
+     * processes which have waited for longer than the specified time, to
+     * standard error; see Watchdog.
+     *
+     * All other flags are passed to {@link Param#load(String[])}.
+     */
+    public static void main(String [] args) {
+        Long duration = null;
+        ThreadScheduler.ChannelType channelType = null;
+        ThreadFactory threadFactory = null;
+        boolean isThreaded = false;
+        String log = null;
+        String trace = null;
+        Long metricsInterval = null;
+        Integer port = null;
+        Long patience = null;
+        final List<String> paramArgs = new ArrayList<>(args.length);
+        final Param param;
+        try {
+            for (final String arg : args) {
+                if (arg.startsWith(SIMULATE)) {
+                    duration = Long.parseLong(
+                            arg.substring(SIMULATE.length()));
+                } else if (arg.startsWith(THREADS)) {
+                    final String threads = arg.substring(THREADS.length());
+                    if (!threads.equals(VIRTUAL)
+                            && !threads.equals(PLATFORM)) {
+                        throw new IllegalArgumentException(
+                                "Unknown thread type: " + threads);
+                    }
+                    threadFactory = threads.equals(VIRTUAL)
+                            ? ThreadScheduler.virtualThreads() : null;
+                    isThreaded = true;
+                } else if (arg.startsWith(METRICS)) {
+                    metricsInterval = Long.parseLong(
+                            arg.substring(METRICS.length()));
+                    if (metricsInterval <= 0) {
+                        throw new IllegalArgumentException(
+                                "The metrics interval must be positive");
+                    }
+                } else if (arg.startsWith(WATCHDOG)) {
+                    patience = Long.parseLong(
+                            arg.substring(WATCHDOG.length()));
+                    if (patience <= 0) {
+                        throw new IllegalArgumentException(
+                                "The watchdog's patience must be positive");
+                    }
+                } else if (arg.startsWith(SERVE)) {
+                    port = Integer.parseInt(arg.substring(SERVE.length()));
+                } else if (arg.startsWith(TRACE)) {
+                    trace = arg.substring(TRACE.length());
+                } else if (arg.startsWith(OUTPUT)) {
+                    final String output = arg.substring(OUTPUT.length());
+                    try {
+                        Logger.setLogType(Logger.LogType.valueOf(
+                                output.toUpperCase()));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException(
+                                "Unknown output: " + output, e);
+                    }
+                } else if (arg.startsWith(LOG)) {
+                    log = arg.substring(LOG.length());
+                } else if (arg.startsWith(CHANNEL)) {
+                    channelType = ThreadScheduler.ChannelType.valueOf(
+                            arg.substring(CHANNEL.length()).toUpperCase());
+                } else {
+                    paramArgs.add(arg);
+                }
+            }
+            if (duration != null && (isThreaded || channelType != null)) {
+                throw new IllegalArgumentException(
+                        "--threads and --channel can't be used with "
+                                + "--simulate, which uses no threads");
+            }
+            param = Param.load(paramArgs.toArray(new String[0]));
+
+            // Report the master seed, so the run can be reproduced even if
+            // the seed was chosen arbitrarily.
+            System.err.println("Seed: " + param.seed);
+            if (log == null) {
+                Logger.startAsync(System.out);
+            } else if (!log.equals(SYNC)) {
+                final OutputStream out = new FileOutputStream(log);
+                Logger.startAsync(out);
+            }
+        } catch (IllegalArgumentException | UnsupportedOperationException
+                | IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if (channelType == null) {
+            channelType = (threadFactory != null)
+                    ? ThreadScheduler.ChannelType.ATOMIC
+                    : ThreadScheduler.ChannelType.MONITOR;
+        }
+        final Scheduler scheduled;
+        if (duration != null) {
+            scheduled = new EventScheduler(duration);
+        } else if (threadFactory != null) {
+            scheduled = new ThreadScheduler(channelType, threadFactory);
+        } else {
+            scheduled = new ThreadScheduler(channelType);
+        }
+        final Scheduler scheduler = (patience == null) ? scheduled
+                : new Watchdog(scheduled, patience, System.err);
+
+        // Construct the simulation.
+        final Main main;
+        try {
+            main = new Main(param, scheduler, trace, metricsInterval, port);
+        } catch (IllegalArgumentException | IOException | JMException e) {
+            Trace.stop();
+            Logger.stop();
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        // Write out the log and trace even if the JVM is killed, since a
+        // real time simulation only ends when some process dies.
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            Trace.stop();
+            Logger.stop();
+        }));
+
+        // Start the simulation.
+        main.start();
+
+        // Wait until some process dies or the simulated time elapses.
+        // The scheduler stops all the processes before returning.
+        try {
+            scheduler.awaitTermination();
+        } catch (InterruptedException e) {
+            System.out.println("Main was interrupted");
+        }
+        Trace.stop();
+        Logger.stop();
+        if (main.metrics != null) {
+            System.err.print(main.metrics.summary());
+        }
+        System.out.println("Main terminates, all threads terminated");
+        System.exit(0);
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A ResourceEntry which measures its use by a single vehicle, then delegates
+ * to another ResourceEntry.
+ *
+ * Measures, for both the resource and the vehicle, how long the vehicle
+ * waits to take ownership of the resource and how many items it puts into
+ * the resource.
+ * Also measures, for the vehicle, how long it takes from getting each item
+ * from its source to putting it into the resource.
+ *
+ * Each instance must only be used by a single vehicle.
+ *
+ * See the implemented interface for documentation on overridden methods.
+ */
+class MeteredEntry<T> implements ResourceEntry<T> {
+
+    private final ResourceEntry<T> entry;
+    private final Scheduler scheduler;
+
+    // The measured source of the vehicle, which knows when the vehicle got
+    // the item it is towing.
+    private final MeteredExit<T> source;
+
+    // The times at which the items in the resource entered it, shared with
+    // the resource's MeteredExits.
+    private final Map<T, Long> entered;
+
+    // The measurements of the resource and of the vehicle.
+    private final Histogram resourceWait;
+    private final LongAdder resourceEntries;
+    private final Histogram vehicleWait;
+    private final LongAdder vehicleTrips;
+    private final Histogram vehicleService;
+
+    /**
+     * Constructs an entry which measures the specified entry, as used by the
+     * vehicle whose source is measured by the specified exit.
+     *
+     * @param resource the measurements of the entry's resource.
+     * @param vehicle the measurements of the vehicle using the entry.
+     * @param entered a thread-safe map in which to record the time at which
+     *                each item enters the resource, shared with every
+     *                MeteredExit of the resource.
+     * @param source the measured source of the vehicle.
+     */
+    MeteredEntry(ResourceEntry<T> entry,
+                 Metrics.Component resource,
+                 Metrics.Component vehicle,
+                 Map<T, Long> entered,
+                 MeteredExit<T> source,
+                 Scheduler scheduler) {
+        this.entry = entry;
+        this.scheduler = scheduler;
+        this.source = source;
+        this.entered = entered;
+        resourceWait = resource.histogram("entry wait");
+        resourceEntries = resource.counter("entries");
+        vehicleWait = vehicle.histogram("destination wait");
+        vehicleTrips = vehicle.counter("trips");
+        vehicleService = vehicle.histogram("service");
+    }
+
+    @Override
+    public void acquireWhenEmpty() throws InterruptedException {
+        final long start = scheduler.nanoTime();
+        entry.acquireWhenEmpty();
+        final long wait = scheduler.nanoTime() - start;
+        resourceWait.record(wait);
+        vehicleWait.record(wait);
+    }
+
+    @Override
+    public void put(T item) throws InterruptedException {
+        // Record the time first, since the item may leave as soon as it is
+        // put.
+        final long now = scheduler.nanoTime();
+        entered.put(item, now);
+        entry.put(item);
+        resourceEntries.increment();
+        vehicleTrips.increment();
+        vehicleService.record(now - source.gotten());
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A ResourceExit which measures its use by a single vehicle, then delegates
+ * to another ResourceExit.
+ *
+ * Measures, for both the resource and the vehicle, how long the vehicle
+ * waits for an item in the resource and how many items it gets from the
+ * resource.
+ * Also measures, for the resource, how long each item was in the resource,
+ * if it was put there through a MeteredEntry.
+ *
+ * Each instance must only be used by a single vehicle.
+ *
+ * See the implemented interface for documentation on overridden methods.
+ */
+class MeteredExit<T> implements ResourceExit<T> {
+
+    private final ResourceExit<T> exit;
+    private final Scheduler scheduler;
+
+    // The times at which the items in the resource entered it, shared with
+    // the resource's MeteredEntries.
+    private final Map<T, Long> entered;
+
+    // The time at which the vehicle last got an item from the resource.
+    // Only accessed by the vehicle.
+    private long gotten = 0;
+
+    // The measurements of the resource and of the vehicle.
+    private final Histogram resourceWait;
+    private final LongAdder resourceExits;
+    private final Histogram resourceOccupancy;
+    private final Histogram vehicleWait;
+
+    /**
+     * Constructs an exit which measures the specified exit, as used by a
+     * vehicle.
+     *
+     * @param resource the measurements of the exit's resource.
+     * @param vehicle the measurements of the vehicle using the exit.
+     * @param entered a thread-safe map in which every MeteredEntry of the
+     *                resource records the time at which each item enters it.
+     */
+    MeteredExit(ResourceExit<T> exit,
+                Metrics.Component resource,
+                Metrics.Component vehicle,
+                Map<T, Long> entered,
+                Scheduler scheduler) {
+        this.exit = exit;
+        this.scheduler = scheduler;
+        this.entered = entered;
+        resourceWait = resource.histogram("exit wait");
+        resourceExits = resource.counter("exits");
+        resourceOccupancy = resource.histogram("occupancy");
+        vehicleWait = vehicle.histogram("source wait");
+    }
+
+    /**
+     * Returns the time, according to Scheduler#nanoTime, at which the
+     * vehicle last got an item from the resource.
+     */
+    long gotten() {
+        return gotten;
+    }
+
+    @Override
+    public void makeAvailable() throws InterruptedException {
+        exit.makeAvailable();
+    }
+
+    @Override
+    public T getNow() {
+        final T item = exit.getNow();
+        gotten = scheduler.nanoTime();
+        resourceExits.increment();
+        final Long entered = this.entered.remove(item);
+        if (entered != null) {
+            resourceOccupancy.record(gotten - entered);
+        }
+        return item;
+    }
+
+    @Override
+    public void acquireWhenFull() throws InterruptedException {
+        final long start = scheduler.nanoTime();
+        exit.acquireWhenFull();
+        final long wait = scheduler.nanoTime() - start;
+        resourceWait.record(wait);
+        vehicleWait.record(wait);
+    }
+}
@@ -0,0 +1,295 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A registry of counters and latency histograms for the components of a
+ * car park, such as sections, lift paths and vehicles.
+ *
+ * Responsible for:
+ * <ul>
+ *     <li>providing each component's counters and histograms by name,
+ *     creating them on first use</li>
+ *     <li>summarising every component as text</li>
+ *     <li>exposing every component as an MBean</li>
+ * </ul>
+ *
+ * Components are measured by MeteredEntry and MeteredExit, which Topology
+ * wraps around the resources each vehicle uses; see Topology#metrics.
+ * Durations are measured in nanoseconds by Scheduler#nanoTime, so they are
+ * in simulated time when the simulation is simulated.
+ *
+ * Counters and histograms are lock-free, so they may be left on; only
+ * creating them and summarising them is synchronised.
+ */
+class Metrics {
+
+    /** The domain of the ObjectNames of the MBeans; see #register(). */
+    static final String DOMAIN = "com.github.nedp.swen90004.carpark";
+
+    // The percentiles which are summarised and exposed.
+    private static final double[] PERCENTILES = {50, 99, 99.9};
+
+    // Used for measuring durations and rates.
+    private final Scheduler scheduler;
+
+    // The time at which measurement started.
+    private final long start;
+
+    // The components measured, by name, in the order they were added.
+    private final Map<String, Component> components = new LinkedHashMap<>();
+
+    /** Constructs an empty registry, timed by the specified scheduler. */
+    Metrics(Scheduler scheduler) {
+        this.scheduler = scheduler;
+        this.start = scheduler.nanoTime();
+    }
+
+    /**
+     * The counters and histograms of a single component, by name.
+     *
+     * Each counter or histogram is created the first time it is asked for,
+     * so callers should ask once and keep it, rather than asking on a hot
+     * path.
+     */
+    static final class Component {
+        private final String name;
+        private final Map<String, LongAdder> counters = new LinkedHashMap<>();
+        private final Map<String, Histogram> histograms =
+                new LinkedHashMap<>();
+
+        private Component(String name) {
+            this.name = name;
+        }
+
+        /** Returns the specified counter, creating it if needed. */
+        synchronized LongAdder counter(String name) {
+            return counters.computeIfAbsent(name, n -> new LongAdder());
+        }
+
+        /** Returns the specified histogram, creating it if needed. */
+        synchronized Histogram histogram(String name) {
+            return histograms.computeIfAbsent(name, n -> new Histogram());
+        }
+
+        // Returns copies of the counters and histograms, so they can be
+        // read without holding the monitor.
+        private synchronized Map<String, LongAdder> counters() {
+            return new LinkedHashMap<>(counters);
+        }
+
+        private synchronized Map<String, Histogram> histograms() {
+            return new LinkedHashMap<>(histograms);
+        }
+    }
+
+    /** Returns the specified component, creating it if needed. */
+    synchronized Component component(String name) {
+        return components.computeIfAbsent(name, Component::new);
+    }
+
+    // Returns a copy of the components.
+    private synchronized List<Component> components() {
+        return new ArrayList<>(components.values());
+    }
+
+    /** Returns the number of nanoseconds since measurement started. */
+    long elapsed() {
+        return scheduler.nanoTime() - start;
+    }
+
+    /**
+     * Returns a human readable summary of every component, with each
+     * counter's total and rate per minute, and each histogram's count, mean,
+     * percentiles and maximum in milliseconds.
+     */
+    String summary() {
+        final double minutes = elapsed() / 60e9;
+        final StringBuilder text = new StringBuilder();
+        text.append(String.format("Metrics after %.1f s:\n", minutes * 60));
+        for (final Component component : components()) {
+            text.append(component.name).append(':');
+            for (final Map.Entry<String, LongAdder> counter
+                    : component.counters().entrySet()) {
+                final long total = counter.getValue().sum();
+                text.append(String.format(" %s=%d (%.1f/min)",
+                        counter.getKey(), total,
+                        (minutes > 0) ? total / minutes : 0.0));
+            }
+            text.append('\n');
+            for (final Map.Entry<String, Histogram> entry
+                    : component.histograms().entrySet()) {
+                final Histogram histogram = entry.getValue();
+                text.append(String.format("  %-16s n=%d mean=%s",
+                        entry.getKey(), histogram.count(),
+                        millis(histogram.mean())));
+                for (final double percentile : PERCENTILES) {
+                    text.append(String.format(" p%s=%s", label(percentile),
+                            millis(histogram.percentile(percentile))));
+                }
+                text.append(String.format(" max=%s\n",
+                        millis(histogram.max())));
+            }
+        }
+        return text.toString();
+    }
+
+    // Formats a duration in nanoseconds as milliseconds.
+    private static String millis(double nanos) {
+        return String.format("%.3fms", nanos / 1e6);
+    }
+
+    // Formats a percentile without a trailing ".0".
+    private static String label(double percentile) {
+        return (percentile == Math.rint(percentile))
+                ? Long.toString((long) percentile)
+                : Double.toString(percentile);
+    }
+
+    /**
+     * Registers an MBean for every component with the platform MBean server,
+     * named {@code DOMAIN:type=Component,name=<component>}.
+     *
+     * Each counter is exposed as an attribute of the same name, and each
+     * histogram as attributes named after it, such as {@code "wait.count"},
+     * {@code "wait.mean"}, {@code "wait.p99"} and {@code "wait.max"},
+     * in nanoseconds.
+     *
+     * Components should all have been created first; the attributes of each
+     * MBean are fixed when it is registered.
+     *
+     * @throws JMException if an MBean cannot be registered, for example
+     * because another simulation in the JVM has already registered it.
+     */
+    void register() throws JMException {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (final Component component : components()) {
+            server.registerMBean(new ComponentMBean(component),
+                    new ObjectName(String.format("%s:type=Component,name=%s",
+                            DOMAIN, ObjectName.quote(component.name))));
+        }
+    }
+
+    /**
+     * Returns a process which prints the summary to standard error
+     * repeatedly, waiting the specified number of milliseconds between
+     * summaries.
+     */
+    Runnable dumper(long interval) {
+        return () -> {
+            while (true) {
+                try {
+                    scheduler.sleep(interval);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(
+                            "Metrics dumper stopped; it was interrupted!", e);
+                }
+                System.err.print(summary());
+            }
+        };
+    }
+
+    // Exposes the counters and histograms of a component as read-only
+    // attributes.
+    private static final class ComponentMBean implements DynamicMBean {
+
+        // Reads the value of each attribute, by name.
+        private final Map<String, Supplier<Object>> attributes =
+                new LinkedHashMap<>();
+        private final MBeanInfo info;
+
+        private ComponentMBean(Component component) {
+            for (final Map.Entry<String, LongAdder> entry
+                    : component.counters().entrySet()) {
+                final LongAdder counter = entry.getValue();
+                attributes.put(entry.getKey(), counter::sum);
+            }
+            for (final Map.Entry<String, Histogram> entry
+                    : component.histograms().entrySet()) {
+                final String name = entry.getKey();
+                final Histogram histogram = entry.getValue();
+                attributes.put(name + ".count", histogram::count);
+                attributes.put(name + ".mean", histogram::mean);
+                for (final double percentile : PERCENTILES) {
+                    attributes.put(name + ".p" + label(percentile),
+                            () -> histogram.percentile(percentile));
+                }
+                attributes.put(name + ".max", histogram::max);
+            }
+
+            final MBeanAttributeInfo[] infos =
+                    new MBeanAttributeInfo[attributes.size()];
+            int i = 0;
+            for (final String name : attributes.keySet()) {
+                final String type = name.endsWith(".mean")
+                        ? "double" : "long";
+                infos[i] = new MBeanAttributeInfo(
+                        name, type, name, true, false, false);
+                i += 1;
+            }
+            info = new MBeanInfo(ComponentMBean.class.getName(),
+                    "Metrics of " + component.name, infos,
+                    null, null, null);
+        }
+
+        @Override
+        public Object getAttribute(String name)
+                throws AttributeNotFoundException {
+            final Supplier<Object> attribute = attributes.get(name);
+            if (attribute == null) {
+                throw new AttributeNotFoundException(name);
+            }
+            return attribute.get();
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] names) {
+            final AttributeList list = new AttributeList();
+            for (final String name : names) {
+                try {
+                    list.add(new Attribute(name, getAttribute(name)));
+                } catch (AttributeNotFoundException e) {
+                    // Missing attributes are left out, as specified.
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute)
+                throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(
+                    attribute.getName() + " is read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String action, Object[] params, String[] sig) {
+            throw new UnsupportedOperationException(action);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            return info;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.util.Optional;
+
+/**
+ * An implementation of Channel for real threads, using the channel's own
+ * monitor.
+ *
+ * These operations are all synchronised on the channel itself.
+ *
+ * See the implemented interface for documentation on overridden methods.
+ */
+class MonitorChannel<T> implements Channel<T> {
+
+    // true if this Channel currently has an item, otherwise false.
+    private boolean isFull = false;
+
+    // The item most recently sent through this channel.
+    private T item = null;
+
+    @Override
+    public synchronized T get() throws InterruptedException {
+        while (!isFull) {
+            wait();
+        }
+        isFull = false;
+        notifyAll();
+        return item;
+    }
+
+    @Override
+    public synchronized void put(T item) throws InterruptedException {
+        while (isFull) {
+            wait();
+        }
+        this.item = item;
+        isFull = true;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized Optional<T> getIfReady() {
+        if (isFull) {
+            isFull = false;
+            notifyAll();
+            return Optional.of(item);
+        } else {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public synchronized boolean putIfEmpty(T item) {
+        if (isFull) return false;
+        this.item = item;
+        isFull = true;
+        notifyAll();
+        return true;
+    }
+}
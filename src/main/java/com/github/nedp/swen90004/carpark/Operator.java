@@ -1,31 +1,60 @@
 package com.github.nedp.swen90004.carpark;
 
 import java.util.Optional;
+import java.util.SplittableRandom;
 
 /**
- * A thread which simulates the Operator of the lift.
+ * A process which simulates the Operator of the lift.
  *
- * The Operator continuously:
+ * In RANDOM mode, as in the assignment specification, the Operator
+ * continuously:
  * <ol>
- *     <li>Waits a randomised amount of time according to Param.operatorLapse().
- *     </li>
+ *     <li>Waits a randomised amount of time according to
+ *     Param#operateLapse(SplittableRandom).</li>
  *     <li>Checks if the lift needs to be operated and operates it if so.</li>
  * </ol>
  *
+ * In EVENT mode, the Operator instead waits until the lift is reserved or
+ * made available, so it checks the lift exactly when it may need to be
+ * operated and never wakes up idly.
+ * It also moves the lift in a single Param#operateTime, rather than waiting
+ * Param#operateTime before moving it.
+ *
  * The lift "needs to be operated" when it is reserved level Y, where Y =/= X,
  * and it is not reserved on level X.
  * In this circumstance the operator will move the lift to level Y.
  *
  * See the implemented interface for documentation on overridden methods.
  */
-class Operator<T> extends Thread {
+class Operator<T> implements Runnable {
+
+    /** The ways in which an Operator may decide when to check the lift. */
+    enum Mode {
+        /** Check the lift after random lapses. */
+        RANDOM,
+        /** Check the lift whenever it is reserved or made available. */
+        EVENT;
+    }
 
     // The lift which this Operator operates.
     private final Lift<T> lift;
 
+    // Determines how often the operator checks the lift, and how long it
+    // takes to operate it.
+    private final Param param;
+
+    // Used for delaying the operator between checks and while operating.
+    private final Scheduler scheduler;
+
+    // Decides the lapses between checks; only used by the operator.
+    private final SplittableRandom random;
+
     /** Constructs a new operator for the specified lift. */
-    Operator(Lift<T> lift) {
+    Operator(Lift<T> lift, Param param, Scheduler scheduler) {
         this.lift = lift;
+        this.param = param;
+        this.scheduler = scheduler;
+        this.random = param.random("operator " + lift);
     }
 
     @Override
@@ -33,7 +62,11 @@ class Operator<T> extends Thread {
         // Repeatedly wait and operate the lift if needed.
         while (true) {
             try {
-                sleep(Param.operateLapse());
+                if (param.operatorMode == Mode.EVENT) {
+                    lift.awaitChange();
+                } else {
+                    scheduler.sleep(param.operateLapse(random));
+                }
                 operateIfNeeded();
             } catch (InterruptedException e) {
                 throw new RuntimeException(
@@ -52,15 +85,19 @@ class Operator<T> extends Thread {
 
         final Integer destination = reservation.get();
         // Report that the lift is moving using the Logger.
-        // These messages should be changed if more levels are added.
-        if (destination == 0) {
+        // We have ownership of the lift, so its level can't change under us.
+        if (destination < lift.currentLevel()) {
             Logger.logEvent("%s goes down", lift);
         } else {
             Logger.logEvent("%s goes up", lift);
         }
 
         // Move the lift, signal its availability, and log its arrival.
-        sleep(Param.OPERATE_TIME);
+        // Making the lift available at a different level already takes
+        // Param#operateTime, so only RANDOM mode waits beforehand.
+        if (param.operatorMode == Mode.RANDOM) {
+            scheduler.sleep(param.operateTime);
+        }
         lift.makeAvailable(destination);
         Logger.logEvent("%s arrives", lift);
     }
@@ -1,63 +1,505 @@
 package com.github.nedp.swen90004.carpark;
 
-import java.util.Random;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SplittableRandom;
 
 /**
  * Parameters that influence the behaviour of the system.
+ *
+ * Each simulation is given its own Param instance, so several simulations
+ * with different parameters may be run in the same JVM.
+ * Parameters take their default values unless they are overridden by a
+ * properties file or by command line flags; see {@link #load(String[])}.
  */
 class Param {
 
-    // Use a single static random instance to avoid unnecessary work.
-    private final static Random random = new Random();
+    // The names of the properties which may be configured, and their
+    // default values.
+    static final String SECTIONS = "sections";
+    static final String SECTION_CAPACITY = "section.capacity";
+    static final String LEVELS = "levels";
+    static final String MAIN_INTERVAL = "main.interval";
+    static final String OPERATE_TIME = "operate.time";
+    static final String TOWING_TIME = "towing.time";
+    static final String TOWING_PROTOCOL = "towing.protocol";
+    static final String FLEET = "fleet";
+    static final String MAX_ARRIVE_INTERVAL = "max.arrive.interval";
+    static final String MAX_DEPART_INTERVAL = "max.depart.interval";
+    static final String MAX_OPERATE_INTERVAL = "max.operate.interval";
+    static final String ROUTE = "route";
+    static final String LIFTS = "lifts";
+    static final String LIFT_CAPACITY = "lift.capacity";
+    static final String LIFT_DWELL = "lift.dwell";
+    static final String DISPATCH = "dispatch";
+    static final String OPERATOR = "operator";
+    static final String SEED = "seed";
+    static final String ENTRANCES = "entrances";
+    static final String EXITS = "exits";
+    static final String ARRIVAL = "arrival";
+    static final String DEPARTURE = "departure";
+    static final String PROCESS = ".process";
+    static final String RATE = ".rate";
+    static final String CURVE = ".curve";
+    static final String PERIOD = ".period";
+    static final String LOG = ".log";
+    private static final String[][] DEFAULTS = {
+            {ENTRANCES, "1"},
+            {EXITS, "1"},
+            {ARRIVAL + PROCESS, "exponential"},
+            {ARRIVAL + RATE, ""},
+            {ARRIVAL + CURVE, ""},
+            {ARRIVAL + PERIOD, "86400000"},
+            {ARRIVAL + LOG, ""},
+            {DEPARTURE + PROCESS, "exponential"},
+            {DEPARTURE + RATE, ""},
+            {DEPARTURE + CURVE, ""},
+            {DEPARTURE + PERIOD, "86400000"},
+            {DEPARTURE + LOG, ""},
+            {ROUTE, ""},
+            {LIFTS, "1"},
+            {LIFT_CAPACITY, "1"},
+            {LIFT_DWELL, "0"},
+            {DISPATCH, "nearest"},
+            {OPERATOR, "random"},
+            {SECTIONS, "6"},
+            {SECTION_CAPACITY, "1"},
+            {LEVELS, "2"},
+            {MAIN_INTERVAL, "60"},
+            {OPERATE_TIME, "480"},
+            {TOWING_TIME, "660"},
+            {TOWING_PROTOCOL, "strict"},
+            {FLEET, "0"},
+            {MAX_ARRIVE_INTERVAL, "960"},
+            {MAX_DEPART_INTERVAL, "1680"},
+            {MAX_OPERATE_INTERVAL, "2400"},
+    };
+
+    // The command line flag naming a properties file to load.
+    private static final String CONFIG = "--config=";
+
+    // The master seed, from which every component's random number generator
+    // is derived; see #random(String).
+    final long seed;
 
     // The number of car park spaces
-    final static int SECTIONS = 6;
+    final int sections;
+
+    // The number of cars each space can hold at once; spaces with more than
+    // one bay queue cars as a Lane
+    final int sectionCapacity;
+
+    // The number of levels (floors) in the capark, including the ground floor.
+    final int levels;
+
+    // The upper levels in the order cars visit them, as a comma separated
+    // list; if empty, cars visit every upper level in ascending order.
+    private final int[] route;
+
+    // The number of lifts shared by all levels
+    final int lifts;
+
+    // The number of cars a single lift carries per trip, and how long it
+    // waits for more cars after the first is loaded, unless it is full
+    final int liftCapacity;
+    final int liftDwell;
+
+    // The number of entrances and exits on the ground level
+    final int entrances;
+    final int exits;
+
+    // The processes by which cars arrive at each entrance and depart through
+    // each exit
+    private final Stream arrivals;
+    private final Stream departures;
 
-    // The time interval at which Main checks threads are alive
-    final static int MAIN_INTERVAL = 60;
+    // The policy for assigning lifts to cars waiting for them, when there is
+    // more than one lift
+    final LiftBank.Dispatch dispatch;
+
+    // How the operator of a single lift decides when to check it
+    final Operator.Mode operatorMode;
+
+    // The time interval at which Main draws state snapshots
+    final int mainInterval;
 
     // The time it takes to operate the lift
-    final static int OPERATE_TIME = 480;
+    final int operateTime;
 
     // The time it takes to tow
-    final static int TOWING_TIME = 660;
+    final int towingTime;
+
+    // When towing vehicles release the place they tow cars out of
+    final Vehicle.Protocol towingProtocol;
+
+    // The number of towing vehicles shared by the hops between sections,
+    // or 0 for a vehicle of its own on every hop
+    final int fleet;
 
     // The maximum amount of time between car arrivals
-    private final static int MAX_ARRIVE_INTERVAL = 960;
+    private final int maxArriveInterval;
 
     // The maximum amount of time between car departures
-    private final static int MAX_DEPART_INTERVAL = 1680;
+    private final int maxDepartInterval;
 
     // The maximum amount of time between operating the lift
-    private final static int MAX_OPERATE_INTERVAL = 2400;
+    private final int maxOperateInterval;
 
     /**
-     * Randomly selects a lapse from a roughly exponential distribution.
-     * The output is limited to a maximum of MAX_ARRIVE_INTERVAL.
+     * Constructs a Param from the specified properties, using default values
+     * for any missing properties.
+     *
+     * If the seed property is missing, the master seed is chosen
+     * arbitrarily.
+     *
+     * @throws IllegalArgumentException if a property is unrecognised or is
+     * not a valid value.
      */
-    static int arrivalLapse() {
-        return cappedExponentialDistribution(MAX_ARRIVE_INTERVAL);
+    Param(Properties properties) {
+        final Properties p = new Properties();
+        for (final String[] entry : DEFAULTS) {
+            p.setProperty(entry[0], entry[1]);
+        }
+        for (final String name : properties.stringPropertyNames()) {
+            if (!p.containsKey(name) && !name.equals(SEED)) {
+                throw new IllegalArgumentException(
+                        "Unknown parameter: " + name);
+            }
+            p.setProperty(name, properties.getProperty(name));
+        }
+
+        sections = positive(p, SECTIONS);
+        sectionCapacity = positive(p, SECTION_CAPACITY);
+        levels = positive(p, LEVELS);
+        mainInterval = positive(p, MAIN_INTERVAL);
+        operateTime = nonNegative(p, OPERATE_TIME);
+        towingTime = nonNegative(p, TOWING_TIME);
+        fleet = nonNegative(p, FLEET);
+        maxArriveInterval = nonNegative(p, MAX_ARRIVE_INTERVAL);
+        maxDepartInterval = nonNegative(p, MAX_DEPART_INTERVAL);
+        maxOperateInterval = nonNegative(p, MAX_OPERATE_INTERVAL);
+        if (levels < 2) {
+            throw new IllegalArgumentException(
+                    "the car park needs at least 2 levels");
+        }
+        lifts = positive(p, LIFTS);
+        liftCapacity = positive(p, LIFT_CAPACITY);
+        liftDwell = nonNegative(p, LIFT_DWELL);
+        if (liftCapacity > 1 && lifts > 1) {
+            throw new IllegalArgumentException(
+                    "only a single lift can carry several cars per trip");
+        }
+        try {
+            dispatch = LiftBank.Dispatch.valueOf(
+                    p.getProperty(DISPATCH).trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(
+                    "Unknown dispatch policy: " + p.getProperty(DISPATCH), e);
+        }
+        try {
+            operatorMode = Operator.Mode.valueOf(
+                    p.getProperty(OPERATOR).trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(
+                    "Unknown operator mode: " + p.getProperty(OPERATOR), e);
+        }
+        try {
+            towingProtocol = Vehicle.Protocol.valueOf(
+                    p.getProperty(TOWING_PROTOCOL).trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown towing protocol: "
+                    + p.getProperty(TOWING_PROTOCOL), e);
+        }
+        final String[] route = p.getProperty(ROUTE).trim().isEmpty()
+                ? new String[0] : p.getProperty(ROUTE).split(",");
+        this.route = new int[route.length];
+        for (int i = 0; i < route.length; i += 1) {
+            this.route[i] = (int) parse(ROUTE, route[i]);
+        }
+
+        entrances = positive(p, ENTRANCES);
+        exits = positive(p, EXITS);
+        arrivals = new Stream(p, ARRIVAL, maxArriveInterval, entrances);
+        departures = new Stream(p, DEPARTURE, maxDepartInterval, exits);
+
+        final String seed = p.getProperty(SEED);
+        this.seed = (seed == null) ? new SplittableRandom().nextLong()
+                : parse(SEED, seed);
+    }
+
+    // The specification of a process of arrivals or departures.
+    private final class Stream {
+
+        // The kinds of process.
+        private static final String EXPONENTIAL = "exponential";
+        private static final String POISSON = "poisson";
+        private static final String CURVED = "curve";
+        private static final String REPLAY = "replay";
+
+        private final String process;
+        private final String prefix;
+        private final boolean isArrival;
+
+        // The mean number of events per hour, for a Poisson process.
+        private final double rate;
+
+        // The rate in each slot of the curve, and its period.
+        private final double[] curve;
+        private final long period;
+
+        // The times to replay for each gate.
+        private final Map<Integer, long[]> log;
+
+        // Parses the specification from the properties with the specified
+        // prefix, for the specified number of gates, whose lapses are capped
+        // exponentials with the specified maximum by default.
+        private Stream(Properties p, String prefix, int max, int gates) {
+            this.prefix = prefix;
+            isArrival = prefix.equals(ARRIVAL);
+            process = p.getProperty(prefix + PROCESS).trim().toLowerCase();
+            switch (process) {
+                case EXPONENTIAL:
+                case POISSON:
+                case CURVED:
+                case REPLAY:
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.format(
+                            "Unknown %s process: %s", prefix, process));
+            }
+
+            // By default, match the mean of the capped exponential.
+            final String rate = p.getProperty(prefix + RATE).trim();
+            this.rate = rate.isEmpty() ? 7200000.0 / Math.max(1, max)
+                    : positive(p, prefix + RATE);
+
+            final String curve = p.getProperty(prefix + CURVE).trim();
+            final String[] rates = curve.isEmpty()
+                    ? new String[0] : curve.split(",");
+            this.curve = new double[rates.length];
+            double total = 0;
+            for (int i = 0; i < rates.length; i += 1) {
+                this.curve[i] = parse(prefix + CURVE, rates[i]);
+                if (this.curve[i] < 0) {
+                    throw new IllegalArgumentException(
+                            prefix + CURVE + " must not be negative");
+                }
+                total += this.curve[i];
+            }
+            if (process.equals(CURVED) && total == 0) {
+                throw new IllegalArgumentException(
+                        prefix + CURVE + " must have a positive rate");
+            }
+            period = positive(p, prefix + PERIOD);
+
+            final String log = p.getProperty(prefix + LOG).trim();
+            this.log = (process.equals(REPLAY))
+                    ? readLog(prefix + LOG, log, gates)
+                    : new HashMap<Integer, long[]>();
+        }
+
+        // Returns a new process for the specified gate, with its own
+        // random number generator.
+        private Lapses create(int gate) {
+            final SplittableRandom random = random(prefix + " " + gate);
+            switch (process) {
+                case POISSON:
+                    return Lapses.poisson(rate, random);
+                case CURVED:
+                    return Lapses.curve(curve, period, random);
+                case REPLAY:
+                    return Lapses.replay(log.get(gate));
+                default:
+                    return isArrival
+                            ? now -> arrivalLapse(random)
+                            : now -> departureLapse(random);
+            }
+        }
+    }
+
+    // Reads a gate log, whose lines each have a time in milliseconds since
+    // the start and optionally the index of a gate (0 by default),
+    // separated by whitespace.
+    // Blank lines and lines starting with # are ignored.
+    // Returns the times of each gate, which must all have at least one,
+    // in ascending order.
+    private static Map<Integer, long[]> readLog(String name,
+                                               String file,
+                                               int gates) {
+        if (file.isEmpty()) {
+            throw new IllegalArgumentException(name + " must be specified");
+        }
+        final List<String> lines;
+        try {
+            lines = Files.readAllLines(Paths.get(file));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(String.format(
+                    "Cannot read %s %s: %s", name, file, e.getMessage()), e);
+        }
+
+        final Map<Integer, List<Long>> times = new HashMap<>();
+        for (final String line : lines) {
+            final String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) continue;
+            final String[] fields = trimmed.split("\\s+");
+            final long time = parse(name, fields[0]);
+            final int gate = (fields.length > 1)
+                    ? (int) parse(name, fields[1]) : 0;
+            times.computeIfAbsent(gate, g -> new ArrayList<>()).add(time);
+        }
+
+        final Map<Integer, long[]> log = new HashMap<>();
+        for (int gate = 0; gate < gates; gate += 1) {
+            final List<Long> gateTimes = times.get(gate);
+            if (gateTimes == null) {
+                throw new IllegalArgumentException(String.format(
+                        "%s has no times for gate %d", name, gate));
+            }
+            final long[] array = new long[gateTimes.size()];
+            for (int i = 0; i < array.length; i += 1) {
+                array[i] = gateTimes.get(i);
+                if (array[i] < 0 || (i > 0 && array[i] < array[i - 1])) {
+                    throw new IllegalArgumentException(String.format(
+                            "%s times must be ascending and not negative",
+                            name));
+                }
+            }
+            log.put(gate, array);
+        }
+        return log;
+    }
+
+    /** Constructs a Param with all default values. */
+    Param() {
+        this(new Properties());
     }
 
     /**
-     * Randomly selects a lapse from a roughly exponential distribution.
-     * The output is limited to a maximum of MAX_DEPART_INTERVAL.
+     * Loads a Param from command line flags.
+     *
+     * {@code --config=<file>} loads properties from the specified file,
+     * then any {@code --<property>=<value>} flags override them, for example
+     * {@code --sections=12 --operate.time=240}.
+     *
+     * @param args the flags to load, none of which may be unrecognised.
+     * @throws IllegalArgumentException if a flag or value is not valid.
+     * @throws IOException if the properties file cannot be read.
      */
-    static int departureLapse() {
-        return cappedExponentialDistribution(MAX_DEPART_INTERVAL);
+    static Param load(String[] args) throws IOException {
+        final Properties file = new Properties();
+        final Properties flags = new Properties();
+        for (final String arg : args) {
+            if (arg.startsWith(CONFIG)) {
+                try (InputStream in = new FileInputStream(
+                        arg.substring(CONFIG.length()))) {
+                    file.load(in);
+                }
+                continue;
+            }
+            final int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException(
+                        "Unknown argument: " + arg);
+            }
+            flags.setProperty(arg.substring(2, equals),
+                    arg.substring(equals + 1));
+        }
+        file.putAll(flags);
+        return new Param(file);
     }
 
     /**
-     * Randomly selects a lapse from a roughly exponential distribution.
-     * The output is limited to a maximum of MAX_OPERATE_INTERVAL.
+     * Returns the upper levels in the order cars should visit them,
+     * or an empty array if they should be visited in ascending order.
      */
-    static int operateLapse() {
-        return cappedExponentialDistribution(MAX_OPERATE_INTERVAL);
+    int[] route() {
+        return route.clone();
+    }
+
+    /**
+     * Returns a new process deciding when cars arrive at the specified
+     * entrance, as configured by the arrival.* properties.
+     *
+     * By default, lapses are taken from
+     * {@link #arrivalLapse(SplittableRandom)}, using the generator
+     * {@code random("arrival <entrance>")}.
+     */
+    Lapses arrivals(int entrance) {
+        return arrivals.create(entrance);
+    }
+
+    /**
+     * Returns a new process deciding when cars may depart through the
+     * specified exit, as configured by the departure.* properties.
+     *
+     * By default, lapses are taken from
+     * {@link #departureLapse(SplittableRandom)}, using the generator
+     * {@code random("departure <exit>")}.
+     */
+    Lapses departures(int exit) {
+        return departures.create(exit);
+    }
+
+    /**
+     * Returns a new random number generator for the specified component,
+     * derived from the master seed and the component's name.
+     *
+     * Each component which needs random numbers should have its own
+     * generator, named uniquely and used only by that component, so that
+     * no generator is shared between threads and the numbers each component
+     * draws depend only on the seed, not on how the threads interleave.
+     */
+    SplittableRandom random(String component) {
+        // Mix the name into the seed with 64-bit FNV-1a, then split so each
+        // component's stream also has its own increment, rather than every
+        // stream being an offset into the same sequence.
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < component.length(); i += 1) {
+            hash ^= component.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return new SplittableRandom(seed ^ hash).split();
+    }
+
+    /**
+     * Randomly selects a lapse from a roughly exponential distribution,
+     * using the specified generator.
+     * The output is limited to a maximum of maxArriveInterval.
+     */
+    int arrivalLapse(SplittableRandom random) {
+        return cappedExponentialDistribution(maxArriveInterval, random);
+    }
+
+    /**
+     * Randomly selects a lapse from a roughly exponential distribution,
+     * using the specified generator.
+     * The output is limited to a maximum of maxDepartInterval.
+     */
+    int departureLapse(SplittableRandom random) {
+        return cappedExponentialDistribution(maxDepartInterval, random);
+    }
+
+    /**
+     * Randomly selects a lapse from a roughly exponential distribution,
+     * using the specified generator.
+     * The output is limited to a maximum of maxOperateInterval.
+     */
+    int operateLapse(SplittableRandom random) {
+        return cappedExponentialDistribution(maxOperateInterval, random);
     }
 
     // Returns a random number from a roughly exponential distribution
     // with the specified maximum, with an expected value of half the max.
-    private static int cappedExponentialDistribution(int max) {
+    private static int cappedExponentialDistribution(
+            int max, SplittableRandom random) {
         // For an exponential distribution, the expected value is 1 / lambda.
         // We want an expected value of half the maximum to match the normal
         // distribution, so (1 / lambda = max / 2) => (lambda = 2 / max).
@@ -70,5 +512,53 @@ class Param {
         // Cap the result to the maximum.
         return result > max ? max : result;
     }
-}
 
+    // Returns the value of the specified property, which must be positive.
+    private static int positive(Properties properties, String name) {
+        final int value = nonNegative(properties, name);
+        if (value == 0) {
+            throw new IllegalArgumentException(name + " must be positive");
+        }
+        return value;
+    }
+
+    // Returns the value of the specified property, which must not be
+    // negative.
+    private static int nonNegative(Properties properties, String name) {
+        final long value = parse(name, properties.getProperty(name));
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(name + " is out of range");
+        }
+        return (int) value;
+    }
+
+    // Parses the value of the specified property as a long.
+    private static long parse(String name, String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format(
+                    "%s must be an integer, not '%s'", name, value), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("sections=%d section.capacity=%d levels=%d "
+                        + "lifts=%d lift.capacity=%d lift.dwell=%d "
+                        + "dispatch=%s operator=%s "
+                        + "operate.time=%d towing.time=%d towing.protocol=%s "
+                        + "fleet=%d "
+                        + "max.arrive.interval=%d max.depart.interval=%d "
+                        + "max.operate.interval=%d entrances=%d exits=%d "
+                        + "arrival.process=%s departure.process=%s seed=%d",
+                sections, sectionCapacity, levels, lifts, liftCapacity,
+                liftDwell,
+                dispatch.name().toLowerCase(),
+                operatorMode.name().toLowerCase(), operateTime, towingTime,
+                towingProtocol.name().toLowerCase(), fleet,
+                maxArriveInterval, maxDepartInterval, maxOperateInterval,
+                entrances, exits, arrivals.process, departures.process,
+                seed);
+    }
+}
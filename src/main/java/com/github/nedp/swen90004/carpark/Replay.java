@@ -0,0 +1,373 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A tool which reconstructs snapshots of a car park from a binary trace,
+ * without rerunning the simulation.
+ *
+ * Responsible for:
+ * <ul>
+ *     <li>reading the layout of the car park from the trace's header</li>
+ *     <li>applying the trace's records in order to a model of where each
+ *     car is</li>
+ *     <li>drawing the model in the same form as CarPark#draw at each
+ *     requested time</li>
+ * </ul>
+ *
+ * See Trace for the format of trace files.
+ */
+class Replay {
+
+    // The ground level, where cars arrive and depart.
+    private static final int GROUND = 0;
+
+    // The number of bytes to read from the trace at a time.
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // The layout of the car park.
+    private final int nSections;
+    private final int capacity;
+    private final int nLifts;
+    private final int nEntrances;
+    private final int nExits;
+    private final int[] route;
+
+    // The position in the route of each upper level, or -1 for levels which
+    // are not in the route.
+    private final int[] routeIndex;
+
+    // The car in each place, or null if the place is empty.
+    // Cars are represented by their string form.
+    private final String[] entrances;
+    private final List<List<String>> cabins;
+    private final int[] cabinLevels;
+
+    // The car in each bay of each section, indexed by the section's id
+    // times the capacity plus the bay.
+    // Cars enter and leave the bays of a section in turn, as for a Lane, so
+    // the next bay to enter and to leave is tracked for each section.
+    private final String[] bays;
+    private final int[] tails;
+    private final int[] heads;
+
+    // The car towed by each vehicle; see #vehicle(int, int) for how they are
+    // indexed.
+    // The vehicles of the entrances come first, then those of the exits.
+    private final String[] vehicles;
+
+    // The index of the vehicle towing each car, by car id, so the vehicle
+    // can be emptied when the car is put down.
+    private final Map<Long, Integer> towedBy = new HashMap<>();
+
+    // Constructs a model of an empty car park with the specified layout.
+    private Replay(int nSections,
+                   int capacity,
+                   int nLevels,
+                   int nLifts,
+                   int nEntrances,
+                   int nExits,
+                   int[] route) {
+        this.nSections = nSections;
+        this.capacity = capacity;
+        this.nLifts = nLifts;
+        this.nEntrances = nEntrances;
+        this.nExits = nExits;
+        this.route = route;
+        routeIndex = new int[nLevels];
+        Arrays.fill(routeIndex, -1);
+        for (int i = 0; i < route.length; i += 1) {
+            routeIndex[route[i]] = i;
+        }
+        entrances = new String[nEntrances];
+        bays = new String[route.length * nSections * capacity];
+        tails = new int[route.length * nSections];
+        heads = new int[route.length * nSections];
+        cabins = new ArrayList<>(nLifts);
+        for (int i = 0; i < nLifts; i += 1) {
+            cabins.add(new ArrayList<>());
+        }
+        cabinLevels = new int[nLifts];
+        vehicles = new String[
+                nEntrances + nExits + route.length * (nSections + 1)];
+    }
+
+    // Returns the index of the specified vehicle of the level at the
+    // specified position in the route.
+    // Vehicle 0 of each level is its launcher, and vehicle nSections is its
+    // loader.
+    private int vehicle(int routeIndex, int vehicle) {
+        return nEntrances + nExits + routeIndex * (nSections + 1) + vehicle;
+    }
+
+    // Returns the index of the vehicle of the specified exit.
+    private int departures(int exit) {
+        return nEntrances + exit;
+    }
+
+    /**
+     * Prints a snapshot of the car park recorded in a trace at each of the
+     * specified times.
+     *
+     * Usage: {@code Replay <trace file> <millis>...}, where each time is
+     * the number of milliseconds since the trace started.
+     * Each snapshot includes every event up to and including its time.
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: Replay <trace file> <millis>...");
+            System.exit(1);
+            return;
+        }
+        final long[] times = new long[args.length - 1];
+        try {
+            for (int i = 0; i < times.length; i += 1) {
+                times[i] = Long.parseLong(args[i + 1]);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Times must be integers: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        Arrays.sort(times);
+
+        try (FileChannel channel = FileChannel.open(
+                Paths.get(args[0]), StandardOpenOption.READ)) {
+            replay(channel, times);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Reads the trace from the specified channel, drawing a snapshot at each
+    // of the specified times, which must be in ascending order.
+    private static void replay(FileChannel channel, long[] times)
+            throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.flip();
+
+        fill(channel, buffer, 9 * Integer.BYTES);
+        if (buffer.getInt() != Trace.MAGIC) {
+            throw new IllegalArgumentException("Not a car park trace");
+        }
+        final int version = buffer.getInt();
+        if (version != Trace.VERSION) {
+            throw new IllegalArgumentException(
+                    "Unsupported trace version: " + version);
+        }
+        final int nSections = buffer.getInt();
+        final int capacity = buffer.getInt();
+        final int nLevels = buffer.getInt();
+        final int nLifts = buffer.getInt();
+        final int nEntrances = buffer.getInt();
+        final int nExits = buffer.getInt();
+        final int[] route = new int[buffer.getInt()];
+        fill(channel, buffer, route.length * Integer.BYTES);
+        for (int i = 0; i < route.length; i += 1) {
+            route[i] = buffer.getInt();
+        }
+        final Replay replay = new Replay(nSections, capacity,
+                nLevels, nLifts, nEntrances, nExits, route);
+
+        // Apply records until passing each time, then draw the snapshot.
+        int next = 0;
+        while (next < times.length) {
+            if (!fill(channel, buffer, Trace.RECORD_SIZE)) break;
+            final long nanos = buffer.getLong();
+            while (next < times.length && nanos > times[next] * 1000000L) {
+                replay.draw(times[next]);
+                next += 1;
+            }
+            final long car = buffer.getLong();
+            final Trace.Event event = Trace.Event.decode(buffer.get());
+            buffer.get();
+            final int level = buffer.getShort();
+            final int resource = buffer.getInt();
+            replay.apply(event, car, level, resource);
+        }
+
+        // The trace ended before the remaining times.
+        while (next < times.length) {
+            replay.draw(times[next]);
+            next += 1;
+        }
+    }
+
+    // Ensures the buffer has at least the specified number of bytes
+    // remaining, reading more from the channel if needed.
+    // Returns false if the trace ends cleanly before any more bytes.
+    private static boolean fill(FileChannel channel, ByteBuffer buffer, int n)
+            throws IOException {
+        if (buffer.remaining() >= n) return true;
+        buffer.compact();
+        while (buffer.position() < n) {
+            if (channel.read(buffer) < 0) {
+                if (buffer.position() == 0) {
+                    buffer.flip();
+                    return false;
+                }
+                throw new EOFException("The trace ends part way through");
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+
+    // Updates the model with a single record.
+    private void apply(Trace.Event event, long car, int level, int resource) {
+        final String name = String.format("[%d]", car);
+        switch (event) {
+            case ARRIVE:
+                entrances[resource] = name;
+                break;
+
+            case LEAVE_ENTRANCE:
+                entrances[resource] = null;
+                tow(car, name, resource);
+                break;
+
+            case ENTER_SECTION:
+                putDown(car);
+                bays[resource * capacity + tails[resource]] = name;
+                tails[resource] = (tails[resource] + 1) % capacity;
+                break;
+
+            case LEAVE_SECTION:
+                bays[resource * capacity + heads[resource]] = null;
+                heads[resource] = (heads[resource] + 1) % capacity;
+                tow(car, name, vehicle(
+                        resource / nSections, resource % nSections + 1));
+                break;
+
+            case ENTER_LIFT:
+                putDown(car);
+                cabins.get(resource).add(name);
+                break;
+
+            case EXIT_LIFT:
+                cabins.get(resource).remove(name);
+                tow(car, name, (level == GROUND)
+                        ? departures() : vehicle(routeIndex[level], 0));
+                break;
+
+            case LIFT_MOVE:
+                break;
+
+            case LIFT_ARRIVE:
+                cabinLevels[resource] = level;
+                break;
+
+            case DEPART:
+                putDown(car);
+                break;
+        }
+    }
+
+    // Returns the index of a vehicle of an exit which isn't towing a car.
+    // The trace doesn't record which exit's vehicle takes a car out of the
+    // lift, only which exit it departs through, so the first idle vehicle is
+    // chosen; with several exits, cars may be drawn on different vehicles
+    // than in the simulation.
+    private int departures() {
+        for (int i = 0; i < nExits; i += 1) {
+            if (vehicles[departures(i)] == null) return departures(i);
+        }
+        return departures(0);
+    }
+
+    // Records that the specified car is towed by the specified vehicle.
+    private void tow(long car, String name, int vehicle) {
+        vehicles[vehicle] = name;
+        towedBy.put(car, vehicle);
+    }
+
+    // Records that the specified car is no longer towed.
+    private void putDown(long car) {
+        final Integer vehicle = towedBy.remove(car);
+        if (vehicle != null) {
+            vehicles[vehicle] = null;
+        }
+    }
+
+    // Draws the model like CarPark#draw, after a heading with its time.
+    private void draw(long millis) {
+        final StringBuilder text = new StringBuilder();
+        text.append(String.format("At %d ms:\n", millis));
+
+        final Integer[] byHeight = new Integer[route.length];
+        for (int i = 0; i < route.length; i += 1) {
+            byHeight[i] = i;
+        }
+        Arrays.sort(byHeight, (a, b) -> Integer.compare(route[b], route[a]));
+
+        // Draws the state in the upper levels.
+        for (final int i : byHeight) {
+            text.append(String.format("%18s", lift(route[i])));
+            text.append(towing(vehicle(i, 0)));
+            for (int j = 0; j < nSections; j += 1) {
+                final int id = i * nSections + j;
+                for (int k = 0; k < capacity; k += 1) {
+                    final String name = (capacity == 1) ? Integer.toString(id)
+                            : String.format("%d.%d", id, k);
+                    text.append(String.format("{%4s:%6s}",
+                            name, bays[id * capacity + k]));
+                }
+                text.append(towing(vehicle(i, j + 1)));
+            }
+            text.append(String.format("%18s\n", lift(route[i])));
+        }
+
+        // Draws the state in the lower level.
+        final StringBuilder arriving = new StringBuilder();
+        for (int i = 0; i < nEntrances; i += 1) {
+            if (i > 0) arriving.append(' ');
+            final String name = (nEntrances == 1) ? "entrance"
+                    : "entrance " + i;
+            arriving.append(towing(i)).append(' ').append(
+                    String.format("{%s:%6s}", name, entrances[i]));
+        }
+        final StringBuilder departing = new StringBuilder();
+        for (int i = 0; i < nExits; i += 1) {
+            if (i > 0) departing.append(' ');
+            departing.append(towing(departures(i)));
+        }
+        text.append(String.format("%18s %s %73s {exit} <--- %s %18s\n",
+                lift(GROUND),
+                arriving,
+                "",
+                departing,
+                lift(GROUND)));
+        System.out.print(text);
+    }
+
+    // Returns the state of the lift cabins at the specified level, like
+    // Elevator#state.
+    private String lift(int level) {
+        final StringBuilder state = new StringBuilder();
+        for (int i = 0; i < nLifts; i += 1) {
+            if (cabinLevels[i] == level) {
+                final String name = (nLifts == 1) ? "lift" : "lift " + i;
+                state.append(String.format("{%8s:%6s}",
+                        name, Snapshot.cars(cabins.get(i))));
+            }
+        }
+        return state.toString();
+    }
+
+    // Returns the state of the specified vehicle, like Vehicle#state.
+    private String towing(int vehicle) {
+        final String car = vehicles[vehicle];
+        return String.format("%6s", (car == null) ? "" : car);
+    }
+}
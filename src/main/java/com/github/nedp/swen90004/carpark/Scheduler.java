@@ -0,0 +1,61 @@
+package com.github.nedp.swen90004.carpark;
+
+/**
+ * Controls the passage of time and the execution of processes in the
+ * simulation.
+ *
+ * Responsible for:
+ * <ul>
+ *     <li>starting the processes (vehicles, operators) of the simulation</li>
+ *     <li>delaying processes by a number of (real or simulated) milliseconds
+ *     </li>
+ *     <li>providing channels whose waiting is consistent with its notion of
+ *     time</li>
+ *     <li>waiting until the simulation has finished</li>
+ * </ul>
+ */
+interface Scheduler {
+
+    /** Returns the current time in milliseconds. */
+    long now();
+
+    /**
+     * Returns the current time in nanoseconds, relative to an arbitrary
+     * origin, for timestamping events.
+     *
+     * By default this is only as precise as {@link #now()}.
+     */
+    default long nanoTime() {
+        return now() * 1000000L;
+    }
+
+    /**
+     * Delays the calling process by the specified number of milliseconds.
+     *
+     * @throws InterruptedException if the process is interrupted while
+     * sleeping.
+     */
+    void sleep(long millis) throws InterruptedException;
+
+    /** Returns a new empty Channel suitable for use with this scheduler. */
+    <T> Channel<T> newChannel();
+
+    /**
+     * Starts a new process with the specified name.
+     *
+     * The process is considered dead as soon as its run method returns or
+     * throws, which ends the simulation.
+     */
+    void start(String name, Runnable process);
+
+    /**
+     * Waits until the simulation has finished, then stops all of its
+     * processes.
+     *
+     * The simulation has finished as soon as any process dies, or when the
+     * scheduler decides it has run for long enough.
+     *
+     * @throws InterruptedException if the caller is interrupted while waiting.
+     */
+    void awaitTermination() throws InterruptedException;
+}
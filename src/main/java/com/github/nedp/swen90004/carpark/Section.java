@@ -2,15 +2,16 @@ package com.github.nedp.swen90004.carpark;
 
 /**
  * An implementation of the Resource interface for Car cars,
- * with support for observing the state of the section as a string.
+ * with support for observing the state of the section.
  *
  * This implementation allows Cars to be placed into and retrived from it,
  * with no extra restrictions other than those specified for the Resource
  * interface (and its super-interfaces).
+ * A section holds a single car; see Lane for a space with several bays.
  *
  * See the implemented interface for documentation on overridden methods.
  */
-class Section implements Resource<Car>, Freeable {
+class Section implements Space {
 
     // Should uniquely identify the section, assisting with state and event
     // messages.
@@ -18,14 +19,14 @@ class Section implements Resource<Car>, Freeable {
 
     // A channel for (internal) signaling of the availability of the section
     // for receiving new cars.
-    private final Channel<Object> empty = new Channel<>();
+    private final Channel<Object> empty;
 
     // A channel for synchronising the getting and putting of Cars.
-    private final Channel<Car> full = new Channel<>();
+    private final Channel<Car> full;
 
     // A channel for (internal) signaling of whether the section is considered
     // 'free' for the purposes of the Freeable interface.
-    private final Channel<Object> free = new Channel<>();
+    private final Channel<Object> free;
 
     // A message characterising the act of getting something from the resource.
     private final String getMessage;
@@ -35,17 +36,24 @@ class Section implements Resource<Car>, Freeable {
 
     // Used for tracking the 'state' of the section; since channels don't allow
     // observation of their contents without retrieving it, this variable is
-    // required to allow the printing of state.
+    // required to allow the observation of state.
     // Cars are stored in this variable when they are put into the section,
-    // and removed from this variable when they are gotten from the section.
-    private Car car = null;
+    // and removed from this variable when they are gotten from the section,
+    // both by vehicles which are changing the observable state.
+    private volatile Car car = null;
 
     // Constructs the section with the specified id and messages for
-    // getting/putting cars.
-    private Section(int id, String getMessage, String putMessage) {
+    // getting/putting cars, using channels from the specified scheduler.
+    private Section(int id,
+                    String getMessage,
+                    String putMessage,
+                    Scheduler scheduler) {
         this.id = id;
         this.getMessage = getMessage;
         this.putMessage = putMessage;
+        this.empty = scheduler.newChannel();
+        this.full = scheduler.newChannel();
+        this.free = scheduler.newChannel();
 
         // Signal that the section is initially both available and free.
         // It should be impossible for this call to wait, because it is
@@ -63,10 +71,11 @@ class Section implements Resource<Car>, Freeable {
      * where X is the specified id.
      *
      * @param id the id of the section.
+     * @param scheduler the scheduler providing the section's channels.
      */
-    Section(int id) {
+    Section(int id, Scheduler scheduler) {
         this(id, String.format("leaves section %d", id),
-                String.format("enters section %d", id));
+                String.format("enters section %d", id), scheduler);
     }
 
     @Override
@@ -82,19 +91,25 @@ class Section implements Resource<Car>, Freeable {
         final Car car = this.car;
         this.car = null;
         Logger.logEvent("%s %s", car, getMessage);
+        Trace.record(Trace.Event.LEAVE_SECTION, car, -1, id);
         return car;
     }
 
     @Override
     public void acquireWhenFull() throws InterruptedException {
-        car = this.full.get();
+        // The car was already recorded when it was put.
+        full.get();
     }
 
     @Override
     public void put(Car car) throws InterruptedException {
-        full.put(car);
+        // Report the car before handing it over, so that it can't be
+        // reported leaving before it is reported entering.
         this.car = car;
+        car.stamp();
         Logger.logEvent("%s %s", car, putMessage);
+        Trace.record(Trace.Event.ENTER_SECTION, car, -1, id);
+        full.put(car);
     }
 
     @Override
@@ -106,9 +121,45 @@ class Section implements Resource<Car>, Freeable {
         free.get();
     }
 
-    /** Returns a human readable representation of this section's state. */
-    String state() {
-        return String.format("{%4d:%6s}", id, car);
+    @Override
+    public boolean acquireIfFull() {
+        return full.getIfReady().isPresent();
+    }
+
+    @Override
+    public boolean acquireIfEmpty() throws InterruptedException {
+        if (!empty.getIfReady().isPresent()) return false;
+
+        // As for acquireWhenEmpty; only waitUntilFree can be holding the
+        // free token, and only briefly.
+        free.get();
+        return true;
+    }
+
+    @Override
+    public void cancelEmpty() throws InterruptedException {
+        // The section was never filled, so it is simply available again.
+        makeAvailable();
+    }
+
+    @Override
+    public int id() {
+        return id;
+    }
+
+    @Override
+    public int capacity() {
+        return 1;
+    }
+
+    @Override
+    public Car car(int bay) {
+        return car;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("section %d", id);
     }
 
     @Override
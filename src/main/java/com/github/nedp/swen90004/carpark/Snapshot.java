@@ -0,0 +1,179 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable view of where every car in a car park is at one instant,
+ * as taken by CarPark#snapshot().
+ *
+ * A consistent snapshot shows the car park between changes to its
+ * observable state (see Version), so each car appears in exactly one place.
+ *
+ * Responsible for drawing the view as text, in the same form as the state
+ * snapshots of the assignment specification.
+ */
+final class Snapshot {
+
+    /**
+     * A cabin of the lift, the level it last stopped at, and its cars in the
+     * order they will leave it.
+     */
+    static final class Cabin {
+        final String name;
+        final int level;
+        final List<Car> cars;
+
+        Cabin(String name, int level, List<Car> cars) {
+            this.name = name;
+            this.level = level;
+            this.cars = Collections.unmodifiableList(cars);
+        }
+    }
+
+    /**
+     * A place which may hold a car, such as a section, entrance or vehicle,
+     * and its car, or null if it is empty.
+     */
+    static final class Place {
+        final String name;
+        final Car car;
+
+        Place(String name, Car car) {
+            this.name = name;
+            this.car = car;
+        }
+    }
+
+    /**
+     * The places on an upper level: the bays of each of its sections, and
+     * its vehicles in the order they tow cars, as for CarPark.Level.
+     */
+    static final class Level {
+        final int index;
+        final List<List<Place>> sections;
+        final List<Place> vehicles;
+
+        Level(int index, List<List<Place>> sections, List<Place> vehicles) {
+            this.index = index;
+            this.sections = Collections.unmodifiableList(sections);
+            this.vehicles = Collections.unmodifiableList(vehicles);
+        }
+    }
+
+    /** The time at which the snapshot was taken; see Scheduler#now(). */
+    final long time;
+
+    /**
+     * The version of the observable state shown, or -1 if the snapshot is
+     * not consistent because the state kept changing while it was taken.
+     */
+    final long version;
+
+    /** The cabins of the lift. */
+    final List<Cabin> cabins;
+
+    /** The upper levels, in the order cars visit them. */
+    final List<Level> levels;
+
+    /** The entrances, and the vehicles which tow cars from each of them. */
+    final List<Place> entrances;
+    final List<Place> arrivals;
+
+    /** The vehicles which tow cars from the lift to each exit. */
+    final List<Place> departures;
+
+    Snapshot(long time,
+             long version,
+             List<Cabin> cabins,
+             List<Level> levels,
+             List<Place> entrances,
+             List<Place> arrivals,
+             List<Place> departures) {
+        this.time = time;
+        this.version = version;
+        this.cabins = Collections.unmodifiableList(cabins);
+        this.levels = Collections.unmodifiableList(levels);
+        this.entrances = Collections.unmodifiableList(entrances);
+        this.arrivals = Collections.unmodifiableList(arrivals);
+        this.departures = Collections.unmodifiableList(departures);
+    }
+
+    /** Returns true if the snapshot is consistent. */
+    boolean isConsistent() {
+        return version >= 0;
+    }
+
+    /**
+     * Returns the snapshot drawn as text: every upper level from the top
+     * down, then the ground level.
+     */
+    String draw() {
+        final StringBuilder text = new StringBuilder();
+        final List<Level> byHeight = new ArrayList<>(levels);
+        byHeight.sort((a, b) -> Integer.compare(b.index, a.index));
+
+        // Draws the state in the upper levels.
+        for (final Level level : byHeight) {
+            text.append(String.format("%18s", lift(level.index)));
+            text.append(towing(level.vehicles.get(0)));
+            for (int i = 0; i < level.sections.size(); i += 1) {
+                for (final Place bay : level.sections.get(i)) {
+                    text.append(String.format("{%4s:%6s}", bay.name, bay.car));
+                }
+                text.append(towing(level.vehicles.get(i + 1)));
+            }
+            text.append(String.format("%18s\n", lift(level.index)));
+        }
+
+        // Draws the state in the lower level.
+        // Optimise spacing for 6 sections.
+        final StringBuilder arriving = new StringBuilder();
+        for (int i = 0; i < entrances.size(); i += 1) {
+            if (i > 0) arriving.append(' ');
+            final Place entrance = entrances.get(i);
+            arriving.append(towing(arrivals.get(i))).append(' ').append(
+                    String.format("{%s:%6s}", entrance.name, entrance.car));
+        }
+        final StringBuilder departing = new StringBuilder();
+        for (int i = 0; i < departures.size(); i += 1) {
+            if (i > 0) departing.append(' ');
+            departing.append(towing(departures.get(i)));
+        }
+        text.append(String.format("%18s %s %73s {exit} <--- %s %18s\n",
+                lift(0), arriving, "", departing, lift(0)));
+        return text.toString();
+    }
+
+    // Returns the state of the lift cabins at the specified level.
+    private String lift(int level) {
+        final StringBuilder state = new StringBuilder();
+        for (final Cabin cabin : cabins) {
+            if (cabin.level == level) {
+                state.append(String.format("{%8s:%6s}",
+                        cabin.name, cars(cabin.cars)));
+            }
+        }
+        return state.toString();
+    }
+
+    /**
+     * Returns the cars in a cabin as they are drawn: null if there are none,
+     * otherwise each car, separated by commas.
+     */
+    static String cars(List<?> cars) {
+        if (cars.isEmpty()) return "null";
+        final StringBuilder text = new StringBuilder();
+        for (final Object car : cars) {
+            if (text.length() > 0) text.append(',');
+            text.append(car);
+        }
+        return text.toString();
+    }
+
+    // Returns the state of a vehicle.
+    private static String towing(Place vehicle) {
+        return String.format("%6s", (vehicle.car == null) ? "" : vehicle.car);
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Aggregates the sojourns of departing cars: the time from each car's
+ * arrival to its departure, and the time it spent in each stage on the way.
+ *
+ * The times are recorded in histograms of a Metrics component, so they are
+ * summarised and exposed with the other metrics:
+ * {@code "total"} for whole sojourns, and one histogram per stage, named
+ * after it, for the time from entering that stage to entering the next.
+ *
+ * Every car is expected to pass through the same stages, in the same order;
+ * see Car#stamp().
+ */
+class Sojourns {
+
+    // The histogram of whole sojourns.
+    private final Histogram total;
+
+    // The histogram of each stage before departure.
+    private final List<Histogram> stages;
+
+    /**
+     * Constructs an aggregator recording to the specified component.
+     *
+     * @param stages the names of the stages cars pass through before they
+     *               depart, in order, starting with their arrival.
+     */
+    Sojourns(Metrics.Component component, List<String> stages) {
+        total = component.histogram("total");
+        this.stages = new ArrayList<>(stages.size());
+        for (final String stage : stages) {
+            this.stages.add(component.histogram(stage));
+        }
+    }
+
+    /**
+     * Records the sojourn of a car which has just departed.
+     *
+     * Cars without stamps for both their arrival and departure are ignored.
+     */
+    void record(Car car) {
+        final int n = car.stages();
+        if (n < 2) return;
+        total.record(car.stamp(n - 1) - car.stamp(0));
+        for (int i = 0; i + 1 < n && i < stages.size(); i += 1) {
+            stages.get(i).record(car.stamp(i + 1) - car.stamp(i));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.nedp.swen90004.carpark;
+
+/**
+ * A stretch of a level which holds cars in one or more bays, such as a
+ * Section or a Lane, with support for observing the car in each bay.
+ *
+ * A space is free, for the purposes of the Freeable interface, while at
+ * least one of its bays is neither holding a car nor reserved for one, so
+ * that a car may be launched into it without waiting.
+ *
+ * Ownership of either end of a space may also be taken without waiting, so
+ * that a vehicle can look for work among many spaces; see Fleet.
+ */
+interface Space extends Resource<Car>, Freeable {
+
+    /**
+     * Takes ownership of the space, as for acquireWhenFull, if an item is
+     * already present.
+     *
+     * @return true if ownership was taken, or false if the caller would
+     * have had to wait.
+     */
+    boolean acquireIfFull();
+
+    /**
+     * Takes ownership of an empty bay, as for acquireWhenEmpty, if one is
+     * already available.
+     *
+     * @return true if ownership was taken, or false if the caller would
+     * have had to wait for a bay.
+     * @throws InterruptedException if the thread is interrupted while
+     * waiting for a concurrent call to waitUntilFree to finish.
+     */
+    boolean acquireIfEmpty() throws InterruptedException;
+
+    /**
+     * Gives up ownership of a bay which the caller acquired while empty,
+     * but has not put an item into.
+     *
+     * @throws InterruptedException if the thread is interrupted while
+     * waiting; if ownership is respected, this method should never wait.
+     */
+    void cancelEmpty() throws InterruptedException;
+
+    /** Returns the id of this space, which is unique in the car park. */
+    int id();
+
+    /** Returns the number of bays in this space, which is at least 1. */
+    int capacity();
+
+    /**
+     * Returns the car in the specified bay, or null if it is empty.
+     *
+     * This is observable state, which may be read by any thread; see
+     * Version.
+     *
+     * @param bay the index of the bay, from 0 to capacity() - 1.
+     */
+    Car car(int bay);
+}
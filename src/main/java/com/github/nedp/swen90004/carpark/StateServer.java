@@ -0,0 +1,296 @@
+package com.github.nedp.swen90004.carpark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An embedded HTTP server which streams the state of a car park as JSON,
+ * so that operators can watch it from a browser or a dashboard.
+ *
+ * Responsible for:
+ * <ul>
+ *     <li>serving the whole state at {@code /state}</li>
+ *     <li>streaming changes to the state at {@code /events}, as
+ *     Server-Sent Events</li>
+ *     <li>publishing changes in batches, from a single process which takes
+ *     a snapshot of the car park at a fixed interval</li>
+ * </ul>
+ *
+ * The state is a JSON object with the time, the version of the snapshot
+ * (see Version), and a "places" object mapping every place which can hold a
+ * car, such as {@code "section 3"} (or {@code "section 3.1"} for each bay
+ * of a section with several), {@code "vehicle 2"},
+ * {@code "entrance"} or {@code "lift 1"}, to the id of its car, or null;
+ * a cabin carrying several cars maps to an array of their ids.
+ * Each cabin of the lift also has a place such as {@code "lift 1 level"},
+ * which maps to the level it last stopped at.
+ *
+ * A stream starts with a {@code snapshot} event holding the whole state,
+ * followed by a {@code delta} event for each batch of changes, holding only
+ * the places which changed since the previous batch; each car's movements,
+ * arrival and departure are shown by the places it leaves and enters.
+ *
+ * Vehicles do no extra work for observers: the publisher only reads the
+ * car park's observable state, formats each batch once, and hands it to
+ * every subscriber's queue; each subscriber is written to by its own server
+ * thread.
+ * A subscriber which falls behind has its queue replaced with a fresh
+ * snapshot, rather than slowing the publisher down.
+ */
+class StateServer {
+
+    // The number of batches which may be queued for a subscriber before it
+    // is considered to have fallen behind.
+    private static final int QUEUE_CAPACITY = 64;
+
+    // How long a subscriber waits for a batch before sending a comment, so
+    // that dead connections are noticed.
+    private static final long KEEP_ALIVE_MILLIS = 15000;
+
+    private final CarPark carPark;
+    private final Scheduler scheduler;
+    private final HttpServer server;
+
+    // The streams of the current subscribers.
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    // The latest whole state, as JSON, which new subscribers start with.
+    private volatile String state;
+
+    // The places in the latest snapshot, with their values as JSON.
+    // Only accessed by the publisher.
+    private Map<String, String> places = new LinkedHashMap<>();
+
+    /**
+     * Constructs a server for the specified car park, listening on the
+     * specified port of every interface.
+     *
+     * The server does not serve anything until it is started.
+     *
+     * @param port the port to listen on, or 0 for an arbitrary free port.
+     * @throws IOException if the server cannot listen on the port.
+     */
+    StateServer(CarPark carPark, Scheduler scheduler, int port)
+            throws IOException {
+        this.carPark = carPark;
+        this.scheduler = scheduler;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/state", this::serveState);
+        server.createContext("/events", this::serveEvents);
+
+        // Each stream occupies a thread for as long as it is open, so the
+        // threads aren't pooled in a fixed number.
+        server.setExecutor(Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "state server");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        publish(carPark.snapshot());
+    }
+
+    /** Returns the port on which the server is listening. */
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    /** Starts serving requests in the background. */
+    void start() {
+        server.start();
+    }
+
+    /** Stops serving requests, closing every stream. */
+    void stop() {
+        server.stop(0);
+    }
+
+    /**
+     * Returns a process which publishes the changes to the car park's state
+     * repeatedly, waiting the specified number of milliseconds between
+     * batches.
+     */
+    Runnable publisher(long interval) {
+        return () -> {
+            while (true) {
+                try {
+                    scheduler.sleep(interval);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(
+                            "State publisher stopped; it was interrupted!", e);
+                }
+                publish(carPark.snapshot());
+            }
+        };
+    }
+
+    // Records the specified snapshot as the latest state, and sends the
+    // changes since the previous snapshot to every subscriber.
+    private void publish(Snapshot snapshot) {
+        final Map<String, String> places = places(snapshot);
+        final Map<String, String> changes = new LinkedHashMap<>();
+        for (final Map.Entry<String, String> place : places.entrySet()) {
+            if (!place.getValue().equals(this.places.get(place.getKey()))) {
+                changes.put(place.getKey(), place.getValue());
+            }
+        }
+        this.places = places;
+        state = json(snapshot, places);
+        if (changes.isEmpty()) return;
+
+        final String delta = event("delta", snapshot, json(snapshot, changes));
+        for (final Subscriber subscriber : subscribers) {
+            subscriber.offer(delta);
+        }
+    }
+
+    // Returns every place in the snapshot, with its value as JSON.
+    private static Map<String, String> places(Snapshot snapshot) {
+        final Map<String, String> places = new LinkedHashMap<>();
+        for (final Snapshot.Cabin cabin : snapshot.cabins) {
+            places.put(cabin.name, ids(cabin.cars));
+            places.put(cabin.name + " level", Integer.toString(cabin.level));
+        }
+        for (final Snapshot.Level level : snapshot.levels) {
+            for (final List<Snapshot.Place> section : level.sections) {
+                for (final Snapshot.Place bay : section) {
+                    places.put("section " + bay.name, id(bay.car));
+                }
+            }
+            for (final Snapshot.Place vehicle : level.vehicles) {
+                places.put("vehicle " + vehicle.name, id(vehicle.car));
+            }
+        }
+        for (final Snapshot.Place entrance : snapshot.entrances) {
+            places.put(entrance.name, id(entrance.car));
+        }
+        for (final Snapshot.Place vehicle : snapshot.arrivals) {
+            places.put("vehicle " + vehicle.name, id(vehicle.car));
+        }
+        for (final Snapshot.Place vehicle : snapshot.departures) {
+            places.put("vehicle " + vehicle.name, id(vehicle.car));
+        }
+        return places;
+    }
+
+    // Returns the id of the specified car as JSON.
+    private static String id(Car car) {
+        return (car == null) ? "null" : Long.toString(car.id());
+    }
+
+    // Returns the ids of the cars in a cabin as JSON: the id of the car, or
+    // null, if there is at most one, otherwise an array of ids.
+    private static String ids(List<Car> cars) {
+        if (cars.size() <= 1) {
+            return id(cars.isEmpty() ? null : cars.get(0));
+        }
+        final StringBuilder json = new StringBuilder("[");
+        for (final Car car : cars) {
+            if (json.length() > 1) json.append(',');
+            json.append(id(car));
+        }
+        return json.append(']').toString();
+    }
+
+    // Returns a JSON object with the time and version of the snapshot, and
+    // the specified places.
+    private static String json(Snapshot snapshot, Map<String, String> places) {
+        final StringBuilder json = new StringBuilder();
+        json.append("{\"time\":").append(snapshot.time)
+                .append(",\"version\":").append(snapshot.version)
+                .append(",\"places\":{");
+        boolean first = true;
+        for (final Map.Entry<String, String> place : places.entrySet()) {
+            if (!first) json.append(',');
+            first = false;
+            // Names are generated by the car park, so they never need
+            // escaping.
+            json.append('"').append(place.getKey()).append("\":")
+                    .append(place.getValue());
+        }
+        return json.append("}}").toString();
+    }
+
+    // Returns a Server-Sent Event of the specified type with the specified
+    // JSON data, identified by the snapshot's version.
+    private static String event(String type, Snapshot snapshot, String data) {
+        return String.format("event: %s\nid: %d\ndata: %s\n\n",
+                type, snapshot.version, data);
+    }
+
+    // Responds with the latest whole state.
+    private void serveState(HttpExchange exchange) throws IOException {
+        final byte[] body = state.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set(
+                "Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    // Streams the latest whole state, then each batch of changes, until
+    // the subscriber disconnects.
+    private void serveEvents(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set(
+                "Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        // Subscribe before reading the whole state, so no batch is missed;
+        // a batch which is also in the state is harmless, since batches
+        // hold values rather than differences.
+        final Subscriber subscriber = new Subscriber();
+        subscribers.add(subscriber);
+        try (OutputStream out = exchange.getResponseBody()) {
+            write(out, snapshotEvent());
+            while (true) {
+                final String event = subscriber.queue.poll(
+                        KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS);
+                write(out, (event == null) ? ":\n\n" : event);
+            }
+        } catch (InterruptedException e) {
+            // The server is stopping.
+        } catch (IOException e) {
+            // The subscriber disconnected.
+        } finally {
+            subscribers.remove(subscriber);
+        }
+    }
+
+    // Returns a snapshot event holding the latest whole state.
+    private String snapshotEvent() {
+        final String state = this.state;
+        return String.format("event: snapshot\ndata: %s\n\n", state);
+    }
+
+    // Writes an event to a stream, and flushes it.
+    private static void write(OutputStream out, String event)
+            throws IOException {
+        out.write(event.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    // The queue of events waiting to be written to a single subscriber.
+    private final class Subscriber {
+        private final BlockingQueue<String> queue =
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+        // Queues an event, or starts the subscriber again from the latest
+        // whole state if it has fallen behind.
+        private void offer(String event) {
+            if (queue.offer(event)) return;
+            queue.clear();
+            queue.offer(snapshotEvent());
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * A tool which runs a simulated car park for every combination of a set of
+ * parameters, in parallel, and prints the throughput and latency of each
+ * configuration as CSV, for capacity planning.
+ *
+ * Responsible for:
+ * <ul>
+ *     <li>expanding the swept parameters into configurations</li>
+ *     <li>running each configuration as an isolated simulation, with its
+ *     own Param, EventScheduler, Metrics and car ids</li>
+ *     <li>running the simulations on a fork-join pool across all cores</li>
+ *     <li>printing one CSV row per configuration, in order</li>
+ * </ul>
+ *
+ * Only the static Logger is shared between simulations, so it is turned
+ * off; Trace is never started.
+ *
+ * The utilisation of the fleet (see Fleet) is the fraction of its vehicles'
+ * time spent towing, and is left blank for configurations without one.
+ */
+class Sweep {
+
+    // Command line flags selecting the simulated duration of each run and
+    // the number of runs to execute at once.
+    // All other flags are parameters; see Param#load.
+    private static final String SIMULATE = "--simulate=";
+    private static final String JOBS = "--jobs=";
+    private static final String CONFIG = "--config=";
+
+    // The parameters whose values are lists, so they are never swept.
+    private static final Set<String> LISTS = new HashSet<>(Arrays.asList(
+            Param.ROUTE,
+            Param.ARRIVAL + Param.CURVE,
+            Param.DEPARTURE + Param.CURVE));
+
+    // The duration of each run in simulated milliseconds, by default.
+    private static final long DEFAULT_DURATION = 3600000;
+
+    // The parameters of one configuration, the values of its swept
+    // parameters in the order they were specified, and whether the seed is
+    // one of them.
+    private static final class Configuration {
+        private final Param param;
+        private final List<String> values;
+        private final boolean isSeedSwept;
+
+        private Configuration(Param param,
+                              List<String> values,
+                              boolean isSeedSwept) {
+            this.param = param;
+            this.values = values;
+            this.isSeedSwept = isSeedSwept;
+        }
+    }
+
+    /**
+     * Runs a simulation for each configuration, then prints a CSV of them.
+     *
+     * Usage: {@code Sweep [--simulate=<millis>] [--jobs=<n>] <parameter>...},
+     * where each parameter is a flag accepted by Param#load.
+     * A parameter with several comma separated values, such as
+     * {@code --sections=4,6,8}, is swept; every combination of the swept
+     * parameters' values is run.
+     * List parameters such as {@code --route=2,1} are never swept.
+     *
+     * Each run lasts 1 hour of simulated time unless specified otherwise,
+     * and {@code --jobs=<n>} limits the number of runs at once, which is the
+     * number of processors by default.
+     * Every run uses the same seed unless it is specified or swept, such as
+     * {@code --seed=1,2,3} to replicate each configuration; the seed of each
+     * run is printed, so a row can be reproduced with Main.
+     */
+    public static void main(String[] args) {
+        Logger.setLogType(Logger.LogType.NONE);
+        long duration = DEFAULT_DURATION;
+        int jobs = Runtime.getRuntime().availableProcessors();
+        final List<String> fixed = new ArrayList<>();
+        final List<String> names = new ArrayList<>();
+        final List<String[]> choices = new ArrayList<>();
+        final List<Configuration> configurations;
+        try {
+            for (final String arg : args) {
+                if (arg.startsWith(SIMULATE)) {
+                    duration = Long.parseLong(
+                            arg.substring(SIMULATE.length()));
+                    continue;
+                } else if (arg.startsWith(JOBS)) {
+                    jobs = Integer.parseInt(arg.substring(JOBS.length()));
+                    continue;
+                }
+                final int equals = arg.indexOf('=');
+                if (arg.startsWith(CONFIG) || !arg.startsWith("--")
+                        || equals < 0) {
+                    fixed.add(arg);
+                    continue;
+                }
+                final String name = arg.substring(2, equals);
+                final String[] values =
+                        arg.substring(equals + 1).split(",");
+                if (values.length > 1 && !LISTS.contains(name)) {
+                    names.add(name);
+                    choices.add(values);
+                } else {
+                    fixed.add(arg);
+                }
+            }
+            if (duration <= 0 || jobs <= 0) {
+                throw new IllegalArgumentException(
+                        "The duration and jobs must be positive");
+            }
+
+            // Unless specified, every configuration shares an arbitrary
+            // seed, so they are compared under the same random streams.
+            if (!names.contains(Param.SEED) && fixed.stream().noneMatch(
+                    arg -> arg.startsWith("--" + Param.SEED + "="))) {
+                fixed.add(String.format("--%s=%d", Param.SEED,
+                        new SplittableRandom().nextLong()));
+            }
+
+            // Load every configuration before running any, so that a bad
+            // value fails fast.
+            configurations = new ArrayList<>();
+            expand(fixed, names, choices, new ArrayList<>(), configurations);
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        // Run every configuration, keeping the results in order.
+        final long simulated = duration;
+        final List<Callable<String>> runs = new ArrayList<>();
+        for (final Configuration configuration : configurations) {
+            runs.add(() -> run(configuration, simulated));
+        }
+        final ForkJoinPool pool = new ForkJoinPool(jobs);
+        final List<String> columns = new ArrayList<>(names);
+        if (!names.contains(Param.SEED)) {
+            columns.add(Param.SEED);
+        }
+        columns.addAll(Arrays.asList("departures", "throughput_per_hour",
+                "mean_ms", "p50_ms", "p99_ms", "max_ms",
+                "fleet_utilisation"));
+        final StringBuilder csv = new StringBuilder();
+        csv.append(String.join(",", columns)).append('\n');
+        try {
+            for (final Future<String> row : pool.invokeAll(runs)) {
+                csv.append(row.get()).append('\n');
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(
+                    "Sweep stopped; it was interrupted!", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(
+                    "Sweep stopped; a run failed!", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        System.out.print(csv);
+    }
+
+    // Adds a configuration for every combination of the values of the swept
+    // parameters from the specified index onwards, given the values chosen
+    // for those before it.
+    private static void expand(List<String> fixed,
+                               List<String> names,
+                               List<String[]> choices,
+                               List<String> chosen,
+                               List<Configuration> configurations)
+            throws IOException {
+        final int i = chosen.size();
+        if (i == names.size()) {
+            final List<String> args = new ArrayList<>(fixed);
+            for (int j = 0; j < i; j += 1) {
+                args.add(String.format("--%s=%s",
+                        names.get(j), chosen.get(j)));
+            }
+            configurations.add(new Configuration(
+                    Param.load(args.toArray(new String[0])),
+                    new ArrayList<>(chosen), names.contains(Param.SEED)));
+            return;
+        }
+        for (final String value : choices.get(i)) {
+            chosen.add(value.trim());
+            expand(fixed, names, choices, chosen, configurations);
+            chosen.remove(i);
+        }
+    }
+
+    // Runs a single configuration for the specified number of simulated
+    // milliseconds, and returns its CSV row.
+    private static String run(Configuration configuration, long duration)
+            throws InterruptedException {
+        final Scheduler scheduler = new EventScheduler(duration);
+        final Metrics metrics = new Metrics(scheduler);
+        final CarPark carPark = new Topology(configuration.param, scheduler)
+                .metrics(metrics)
+                .build();
+        carPark.start();
+        scheduler.awaitTermination();
+
+        final Histogram sojourns =
+                metrics.component("sojourn").histogram("total");
+        final StringBuilder row = new StringBuilder();
+        for (final String value : configuration.values) {
+            row.append(value).append(',');
+        }
+        if (!configuration.isSeedSwept) {
+            row.append(configuration.param.seed).append(',');
+        }
+        row.append(String.format("%d,%.1f,%.3f,%.3f,%.3f,%.3f",
+                sojourns.count(),
+                sojourns.count() * 3600000.0 / duration,
+                sojourns.mean() / 1e6,
+                sojourns.percentile(50) / 1e6,
+                sojourns.percentile(99) / 1e6,
+                sojourns.max() / 1e6));
+        row.append(',');
+        final int fleet = configuration.param.fleet;
+        if (fleet > 0 && configuration.param.sections > 1) {
+            final long busy = metrics.component("fleet")
+                    .counter("busy ns").sum();
+            row.append(String.format("%.3f", busy / (fleet * duration * 1e6)));
+        }
+        return row.toString();
+    }
+}
@@ -0,0 +1,179 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A Scheduler which runs each process in its own thread, in real time.
+ *
+ * This is the execution model of the assignment specification; simulating
+ * an hour of car park traffic takes an hour.
+ *
+ * Threads are created by a pluggable ThreadFactory.
+ * Since every process blocks for most of its life, each needs a thread of its
+ * own rather than a slot in a bounded pool; with virtual threads (see
+ * {@link #virtualThreads()}) tens of thousands of processes may be hosted
+ * by a handful of carrier threads.
+ * Virtual threads should be paired with ATOMIC channels, since a thread
+ * waiting inside a monitor pins its carrier.
+ *
+ * The threads are supervised without polling: each process signals when it
+ * dies, either by returning or through its thread's uncaught exception
+ * handler, and awaitTermination simply waits for the first signal.
+ *
+ * See the implemented interface for documentation on overridden methods.
+ */
+class ThreadScheduler implements Scheduler {
+
+    /** The implementations of Channel which a ThreadScheduler may provide. */
+    enum ChannelType {
+        /** Channels synchronised on their monitors; see MonitorChannel. */
+        MONITOR,
+        /** Lock-free channels; see AtomicChannel. */
+        ATOMIC;
+    }
+
+    // The type of channel provided by #newChannel.
+    private final ChannelType channelType;
+
+    // Creates the thread for each process.
+    private final ThreadFactory threadFactory;
+
+    // The threads of all started processes.
+    private final List<Thread> threads = new ArrayList<>();
+
+    // Counted down when the first process dies, which ends the simulation.
+    private final CountDownLatch died = new CountDownLatch(1);
+
+    /**
+     * Constructs a new ThreadScheduler which provides channels of the
+     * specified type, and runs processes in threads from the specified
+     * factory.
+     *
+     * @param channelType the type of channel to provide.
+     * @param threadFactory the factory which creates a thread per process.
+     */
+    ThreadScheduler(ChannelType channelType, ThreadFactory threadFactory) {
+        this.channelType = channelType;
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * Constructs a new ThreadScheduler which provides channels of the
+     * specified type, and runs processes in platform threads.
+     *
+     * @param channelType the type of channel to provide.
+     */
+    ThreadScheduler(ChannelType channelType) {
+        this(channelType, Thread::new);
+    }
+
+    /**
+     * Returns a ThreadFactory which creates virtual threads.
+     *
+     * Virtual threads are looked up reflectively, so that the simulator
+     * still builds and runs on older JVMs when they aren't used.
+     *
+     * @throws UnsupportedOperationException if the running JVM does not
+     * support virtual threads.
+     */
+    static ThreadFactory virtualThreads() {
+        try {
+            final Object builder =
+                    Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+                    .getMethod("factory").invoke(builder);
+        } catch (NoSuchMethodException | ClassNotFoundException
+                | IllegalAccessException | InvocationTargetException e) {
+            throw new UnsupportedOperationException(
+                    "virtual threads are not supported by this JVM", e);
+        }
+    }
+
+    @Override
+    public long now() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+
+    @Override
+    public <T> Channel<T> newChannel() {
+        switch (channelType) {
+            case ATOMIC:
+                return new AtomicChannel<>();
+
+            case MONITOR:
+            default:
+                return new MonitorChannel<>();
+        }
+    }
+
+    @Override
+    public synchronized void start(String name, Runnable process) {
+        // A process which returns signals its death itself; one which throws
+        // signals it from the uncaught exception handler, after reporting
+        // the exception.
+        final Thread thread = threadFactory.newThread(() -> {
+            process.run();
+            died.countDown();
+        });
+        thread.setName(name);
+        thread.setUncaughtExceptionHandler(this::died);
+        threads.add(thread);
+        thread.start();
+    }
+
+    /**
+     * Waits until any process dies, then interrupts every process and waits
+     * for all of their threads to finish.
+     */
+    @Override
+    public void awaitTermination() throws InterruptedException {
+        try {
+            died.await();
+        } finally {
+            // If we're here, the simulation is no longer alive or the
+            // caller was interrupted.
+            // Interrupt all the threads.
+            interrupt();
+        }
+        for (final Thread thread : threads()) {
+            thread.join();
+        }
+    }
+
+    // Handles an exception thrown by the process in the specified thread.
+    // The first process to die ends the simulation, and the processes which
+    // are interrupted afterwards are expected to throw, so only exceptions
+    // which happen while the simulation is alive are reported.
+    private void died(Thread thread, Throwable e) {
+        if (died.getCount() > 0) {
+            System.err.print("Exception in thread \"" + thread.getName()
+                    + "\" ");
+            e.printStackTrace();
+        }
+        died.countDown();
+    }
+
+    private synchronized List<Thread> threads() {
+        return new ArrayList<>(threads);
+    }
+
+    private synchronized void interrupt() {
+        for (final Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A builder which wires up the components of a multi-level CarPark.
+ *
+ * Every upper level has its own chain of Param#sections sections.
+ * The route determines the order in which cars visit the upper levels;
+ * the lift provides one path from the ground level to the first level of the
+ * route, one path between each consecutive pair of levels in the route,
+ * and one path from the last level of the route back to the ground level.
+ *
+ * Every path which delivers cars to an upper level is guarded by the first
+ * section of that level, like the raiser in the LTSA model, so that the lift
+ * is never locked to carry a car to a level which cannot accept it.
+ *
+ * With a single lift (Param#lifts), the lift is a Lift moved by an
+ * Operator, as in the assignment specification; otherwise it is a LiftBank
+ * whose cabins are assigned according to Param#dispatch.
+ *
+ * The ground level has Param#entrances entrances and Param#exits exits,
+ * each with its own towing vehicle; the entrances share the path into the
+ * first level of the route, and the exits share the path out of the last.
+ *
+ * The hops between adjacent sections each have their own towing vehicle,
+ * unless Param#fleet is positive, in which case they share a Fleet of that
+ * many vehicles.
+ *
+ * If Metrics are given, every resource and vehicle is measured.
+ */
+class Topology {
+
+    // The ground level, where cars arrive and depart.
+    private static final int GROUND = 0;
+
+    private final Param param;
+    private final Scheduler scheduler;
+
+    // The upper levels in the order cars visit them.
+    private int[] route;
+
+    // The registry in which to measure the car park, or null if it should
+    // not be measured.
+    private Metrics metrics = null;
+
+    // The version of the observable state of the car park being built.
+    private Version version;
+
+    // The times at which the cars in each measured resource entered it,
+    // by the name of the resource, since several vehicles may use separate
+    // adapters of the same lift path.
+    private final Map<String, Map<Car, Long>> entered = new HashMap<>();
+
+    /**
+     * Constructs a builder for a car park with the specified parameters,
+     * whose route is Param#route(), or visits every upper level in ascending
+     * order if that is empty.
+     *
+     * @throws IllegalArgumentException if Param#route() is not a valid route.
+     */
+    Topology(Param param, Scheduler scheduler) {
+        this.param = param;
+        this.scheduler = scheduler;
+        final int[] route = param.route();
+        if (route.length > 0) {
+            route(route);
+        } else {
+            this.route = new int[param.levels - 1];
+            for (int i = 0; i < this.route.length; i += 1) {
+                this.route[i] = i + 1;
+            }
+        }
+    }
+
+    /**
+     * Sets the order in which cars visit the upper levels.
+     *
+     * Each upper level may be visited at most once; levels which are not
+     * visited have no sections.
+     *
+     * @param levels the upper levels, in the order they should be visited.
+     * @return this builder.
+     * @throws IllegalArgumentException if the route is empty, visits the
+     * ground level, visits a level twice, or visits a level which the car park
+     * doesn't have.
+     */
+    Topology route(int... levels) {
+        if (levels.length == 0) {
+            throw new IllegalArgumentException("the route must not be empty");
+        }
+        final boolean[] visited = new boolean[param.levels];
+        for (final int level : levels) {
+            if (level <= GROUND || level >= param.levels) {
+                throw new IllegalArgumentException(
+                        "the route visits a missing level: " + level);
+            }
+            if (visited[level]) {
+                throw new IllegalArgumentException(
+                        "the route visits a level twice: " + level);
+            }
+            visited[level] = true;
+        }
+        route = levels.clone();
+        return this;
+    }
+
+    /**
+     * Measures every resource and vehicle in the specified registry, with
+     * components named after them.
+     *
+     * @return this builder.
+     */
+    Topology metrics(Metrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /** Returns the upper levels in the order cars will visit them. */
+    int[] route() {
+        return route.clone();
+    }
+
+    /** Constructs and wires together the components of the car park. */
+    CarPark build() {
+        // Every component's observable state shares a version, so that the
+        // whole car park can be observed consistently.
+        version = new Version();
+
+        final Elevator<Car> lift;
+        final Map<String, Runnable> operators;
+        if (param.lifts == 1) {
+            final Lift<Car> single =
+                    new Lift<>(param.levels, "lift", param, scheduler, version);
+            lift = single;
+            if (param.liftCapacity == 1) {
+                operators = Collections.<String, Runnable>singletonMap(
+                        "operator", new Operator<>(single, param, scheduler));
+            } else {
+                // A lift which carries several cars also needs its doors
+                // closed on each batch.
+                final Map<String, Runnable> processes = new LinkedHashMap<>();
+                processes.put(
+                        "operator", new Operator<>(single, param, scheduler));
+                processes.put("doors", single.doors());
+                operators = Collections.unmodifiableMap(processes);
+            }
+        } else {
+            final LiftBank<Car> bank = new LiftBank<>(param.lifts,
+                    param.levels, "lift", param.dispatch, param, scheduler,
+                    version);
+            lift = bank;
+            operators = bank.processes();
+        }
+        // Each entrance allocates ids from its own generator.
+        final CarIds ids = new CarIds();
+        final List<Entrance> entrances = new ArrayList<>(param.entrances);
+        for (int i = 0; i < param.entrances; i += 1) {
+            entrances.add(new Entrance(
+                    i, param, scheduler, ids.generator(), version));
+        }
+
+        // The names of the stages of each car's journey before it departs,
+        // in order.
+        final List<String> stages = new ArrayList<>();
+        stages.add("entrance");
+
+        // Generate the sections of every level before wiring up the lift,
+        // since the lift's paths are guarded by them.
+        // Spaces with several bays are lanes, which behave like sections
+        // but queue cars.
+        final List<List<Space>> sections = new ArrayList<>(route.length);
+        int nextId = 0;
+        for (int i = 0; i < route.length; i += 1) {
+            final List<Space> level = new ArrayList<>(param.sections);
+            for (int j = 0; j < param.sections; j += 1) {
+                level.add((param.sectionCapacity == 1)
+                        ? new Section(nextId, scheduler)
+                        : new Lane(nextId, param.sectionCapacity, scheduler));
+                nextId += 1;
+            }
+            sections.add(level);
+        }
+
+        // The vehicles of each level, in the order they tow cars, and the
+        // hops between its sections if they share a fleet.
+        final List<List<Vehicle<Car>>> vehicles =
+                new ArrayList<>(route.length);
+        final List<List<Fleet.Hop>> hops = new ArrayList<>(route.length);
+        final Fleet fleet = (param.fleet == 0 || param.sections == 1) ? null
+                : new Fleet(param.fleet, param, scheduler, version,
+                        (metrics == null) ? null : metrics.component("fleet"));
+
+        // Wire up the path of the lift into each level of the route, from
+        // the last section of the previous level (or the entrances).
+        // Each path should be guarded like the raiser in the LTSA model to
+        // prevent deadlocks.
+        // If the lift carries several cars per trip, each path may carry as
+        // many cars as the first section of its level can hold, which each
+        // give back once they leave that section.
+        ResourceExit<Car> previous = null;
+        int previousLevel = GROUND;
+        final List<Vehicle<Car>> arrivals = new ArrayList<>(param.entrances);
+        for (int i = 0; i < route.length; i += 1) {
+            final List<Space> level = sections.get(i);
+            final GuardedLiftResource path = new GuardedLiftResource(lift,
+                    previousLevel, route[i], level.get(0),
+                    (param.liftCapacity == 1) ? 1 : level.get(0).capacity(),
+                    scheduler);
+            final ResourceExit<Car> first = path.releasing(level.get(0));
+            stages.add(path.toString());
+            for (final Space section : level) {
+                stages.add(section.toString());
+            }
+
+            // Generate the towing vehicles which move new arrivals into the
+            // lift, or which load cars into the lift on the previous level.
+            // An entrance is only made available once the next car has
+            // arrived, so its vehicle always tows strictly; releasing it
+            // early would only hold the hitched car until then.
+            if (previousLevel == GROUND) {
+                for (final Entrance entrance : entrances) {
+                    arrivals.add(vehicle(gate("arrivals", entrance.index(),
+                            param.entrances), GROUND, entrance, path,
+                            Vehicle.Protocol.STRICT));
+                }
+            } else {
+                vehicles.get(i - 1).add(
+                        vehicle("loader", previousLevel, previous, path));
+            }
+
+            // Generate the towing vehicle which launches cars from the lift,
+            // and the regular towing vehicles, or the hops of the fleet.
+            // The fleet must notice when the vehicles outside it fill the
+            // first section or empty the last.
+            final List<Vehicle<Car>> levelVehicles =
+                    new ArrayList<>(param.sections + 1);
+            final List<Fleet.Hop> levelHops = new ArrayList<>();
+            levelVehicles.add(vehicle("launcher", route[i], path,
+                    (fleet == null) ? level.get(0)
+                            : fleet.watchEntry(level.get(0))));
+            for (int j = 1; j < param.sections; j += 1) {
+                final ResourceExit<Car> exit =
+                        (j == 1) ? first : level.get(j - 1);
+                if (fleet == null) {
+                    levelVehicles.add(vehicle(Integer.toString(j), route[i],
+                            exit, level.get(j)));
+                } else {
+                    levelHops.add(hop(fleet, Integer.toString(j), route[i],
+                            level.get(j - 1), exit, level.get(j)));
+                }
+            }
+            vehicles.add(levelVehicles);
+            hops.add(levelHops);
+
+            final ResourceExit<Car> last = (param.sections == 1) ? first
+                    : level.get(param.sections - 1);
+            previous = (fleet == null) ? last : fleet.watchExit(last);
+            previousLevel = route[i];
+        }
+
+        // Generate the towing vehicle which loads cars into the lift on
+        // the last level of the route, and the towing vehicle which removes
+        // cars from the lift so they may depart.
+        final Resource<Car> lowerer =
+                new LiftResource(lift, previousLevel, GROUND);
+        vehicles.get(route.length - 1).add(
+                vehicle("loader", previousLevel, previous, lowerer));
+        stages.add(lowerer.toString());
+
+        // Generate the exits, which record each car's sojourn if the car
+        // park is measured.
+        // Each exit's vehicle needs its own adapter of the lowering path,
+        // since an adapter tracks the cabin owned by the vehicle getting
+        // cars from it.
+        final Sojourns sojourns = (metrics == null) ? null
+                : new Sojourns(metrics.component("sojourn"), stages);
+        final List<Vehicle<Car>> departures = new ArrayList<>(param.exits);
+        for (int i = 0; i < param.exits; i += 1) {
+            final ResourceExit<Car> source = (i == 0) ? lowerer
+                    : new LiftResource(lift, previousLevel, GROUND);
+            departures.add(vehicle(gate("departures", i, param.exits),
+                    GROUND, source, new Exit(i, param, scheduler, sojourns)));
+        }
+
+        final List<CarPark.Level> levels = new ArrayList<>(route.length);
+        for (int i = 0; i < route.length; i += 1) {
+            levels.add(new CarPark.Level(route[i], sections.get(i),
+                    vehicles.get(i), hops.get(i)));
+        }
+        return new CarPark(scheduler, lift, operators,
+                (fleet == null) ? Collections.emptyMap() : fleet.processes(),
+                entrances, arrivals, departures, levels, version);
+    }
+
+    // Returns the name of the vehicle serving the specified entrance or
+    // exit, which is suffixed by its index if there are several.
+    private static String gate(String name, int index, int count) {
+        return (count > 1) ? String.format("%s %d", name, index) : name;
+    }
+
+    // Constructs a towing vehicle which follows the configured protocol.
+    private Vehicle<Car> vehicle(String name,
+                                 int level,
+                                 ResourceExit<Car> source,
+                                 ResourceEntry<Car> destination) {
+        return vehicle(name, level, source, destination,
+                param.towingProtocol);
+    }
+
+    // Constructs a towing vehicle, whose id is prefixed by its level if the
+    // car park has more than one upper level.
+    // If the car park is measured, the vehicle's source and destination are
+    // wrapped to measure them.
+    private Vehicle<Car> vehicle(String name,
+                                 int level,
+                                 ResourceExit<Car> source,
+                                 ResourceEntry<Car> destination,
+                                 Vehicle.Protocol protocol) {
+        final String id = id(name, level);
+        if (metrics == null) {
+            return new Vehicle<>(id, source, destination, protocol,
+                    param, scheduler, version);
+        }
+        final Metrics.Component vehicle = metrics.component("vehicle " + id);
+        final MeteredExit<Car> meteredSource = meter(source, vehicle);
+        return new Vehicle<>(id, meteredSource,
+                meter(destination, vehicle, meteredSource),
+                protocol, param, scheduler, version);
+    }
+
+    // Adds a hop of the fleet between two sections, named and measured like
+    // the towing vehicle it replaces, which gets cars through the specified
+    // adapter of its source.
+    // Every vehicle of the fleet which tows over the hop is measured as
+    // that vehicle.
+    private Fleet.Hop hop(Fleet fleet,
+                          String name,
+                          int level,
+                          Space source,
+                          ResourceExit<Car> exit,
+                          Space destination) {
+        final String id = id(name, level);
+        if (metrics == null) {
+            return fleet.hop(id, source, destination, exit, destination);
+        }
+        final Metrics.Component vehicle = metrics.component("vehicle " + id);
+        final MeteredExit<Car> meteredSource = meter(exit, vehicle);
+        return fleet.hop(id, source, destination, meteredSource,
+                meter(destination, vehicle, meteredSource));
+    }
+
+    // Returns the id of a towing vehicle, which is prefixed by its level if
+    // the car park has more than one upper level.
+    private String id(String name, int level) {
+        return (level == GROUND || param.levels <= 2) ? name
+                : String.format("%d.%s", level, name);
+    }
+
+    // Wraps the source of a towing vehicle to measure it.
+    private MeteredExit<Car> meter(ResourceExit<Car> source,
+                                   Metrics.Component vehicle) {
+        return new MeteredExit<>(source, metrics.component(source.toString()),
+                vehicle, entered(source), scheduler);
+    }
+
+    // Wraps the destination of a towing vehicle to measure it, given its
+    // measured source.
+    private MeteredEntry<Car> meter(ResourceEntry<Car> destination,
+                                    Metrics.Component vehicle,
+                                    MeteredExit<Car> source) {
+        return new MeteredEntry<>(destination,
+                metrics.component(destination.toString()), vehicle,
+                entered(destination), source, scheduler);
+    }
+
+    // Returns the map in which to record when cars enter the specified
+    // resource.
+    private Map<Car, Long> entered(Object resource) {
+        return entered.computeIfAbsent(
+                resource.toString(), r -> new ConcurrentHashMap<>());
+    }
+}
@@ -0,0 +1,211 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A class which records a compact binary trace of the movement of cars.
+ *
+ * Responsible for encoding each event as a fixed-width record, buffering
+ * the records, and writing them to a file through a FileChannel.
+ * The trace can be turned back into snapshots of the car park by Replay,
+ * without rerunning the simulation.
+ *
+ * Like Logger, recording is a no-op until the trace is started.
+ *
+ * A trace file is a header followed by any number of records, all
+ * big-endian:
+ * <pre>
+ * header: int MAGIC, int VERSION, int sections, int section capacity,
+ *         int levels, int lifts, int entrances, int exits, int route length,
+ *         int[route length] route
+ * record: long nanoseconds since the trace started, long car id (or -1),
+ *         byte event, byte unused, short level, int resource
+ * </pre>
+ * The resource of a record is the section id for section events, the cabin
+ * index for lift events, the entrance index for entrance events, and the
+ * exit index for departures.
+ */
+class Trace {
+
+    /**
+     * The kinds of events in a trace.
+     *
+     * Each is encoded by its ordinal, so new events must only be added at
+     * the end.
+     */
+    enum Event {
+        /** A car arrives at the entrance. */
+        ARRIVE,
+        /** A car is towed out of the entrance. */
+        LEAVE_ENTRANCE,
+        /** A car is put into a section. */
+        ENTER_SECTION,
+        /** A car is taken out of a section. */
+        LEAVE_SECTION,
+        /** A car is put into a lift cabin, going to the record's level. */
+        ENTER_LIFT,
+        /** A car is taken out of a lift cabin at the record's level. */
+        EXIT_LIFT,
+        /** A lift cabin starts moving to the record's level. */
+        LIFT_MOVE,
+        /** A lift cabin arrives at the record's level. */
+        LIFT_ARRIVE,
+        /** A car leaves the car park through the exit. */
+        DEPART;
+
+        private static final Event[] VALUES = values();
+
+        /** Returns the event encoded by the specified byte. */
+        static Event decode(byte code) {
+            if (code < 0 || code >= VALUES.length) {
+                throw new IllegalArgumentException("Unknown event: " + code);
+            }
+            return VALUES[code];
+        }
+    }
+
+    /** Identifies a trace file, and the version of its format. */
+    static final int MAGIC = 0x43505452;
+    static final int VERSION = 3;
+
+    /** The number of bytes in each record. */
+    static final int RECORD_SIZE = 24;
+
+    /** The car id of records which involve no car. */
+    static final long NO_CAR = -1;
+
+    // The number of bytes to buffer before writing them to the file.
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // The trace being recorded, or null if there is none.
+    private static volatile Trace trace = null;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final Scheduler scheduler;
+
+    // The time at which the trace started, according to the scheduler.
+    private final long start;
+
+    // Whether writing has failed, after which records are discarded.
+    private boolean failed = false;
+
+    // Constructs a trace writing to the specified file, and writes the
+    // header.
+    private Trace(Path path, Param param, int[] route, Scheduler scheduler)
+            throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.scheduler = scheduler;
+        this.start = scheduler.nanoTime();
+
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(param.sections);
+        buffer.putInt(param.sectionCapacity);
+        buffer.putInt(param.levels);
+        buffer.putInt(param.lifts);
+        buffer.putInt(param.entrances);
+        buffer.putInt(param.exits);
+        buffer.putInt(route.length);
+        for (final int level : route) {
+            buffer.putInt(level);
+        }
+    }
+
+    /**
+     * Starts recording a trace of a car park to the specified file,
+     * replacing its contents.
+     *
+     * @param route the upper levels of the car park in the order cars visit
+     *              them; see Topology#route().
+     * @throws IllegalStateException if a trace is already being recorded.
+     * @throws IOException if the file cannot be opened.
+     */
+    static synchronized void start(Path path,
+                                   Param param,
+                                   int[] route,
+                                   Scheduler scheduler) throws IOException {
+        if (trace != null) {
+            throw new IllegalStateException("a trace is already started");
+        }
+        trace = new Trace(path, param, route, scheduler);
+    }
+
+    /**
+     * Writes out every record so far and closes the trace file.
+     *
+     * Does nothing if no trace is being recorded.
+     */
+    static synchronized void stop() {
+        final Trace trace = Trace.trace;
+        if (trace == null) return;
+        Trace.trace = null;
+        synchronized (trace) {
+            trace.write();
+            try {
+                trace.channel.close();
+            } catch (IOException e) {
+                trace.fail(e);
+            }
+        }
+    }
+
+    /**
+     * Records an event involving the specified car, if a trace is being
+     * recorded.
+     *
+     * @param car the car involved, or null if there is none.
+     * @param level the level at which the event happens, or -1 if unknown.
+     * @param resource the section id or lift cabin involved, or -1 if none.
+     */
+    static void record(Event event, Car car, int level, int resource) {
+        final Trace trace = Trace.trace;
+        if (trace != null) {
+            trace.append(event, (car == null) ? NO_CAR : car.id(),
+                    level, resource);
+        }
+    }
+
+    // Encodes a record into the buffer, writing out the buffer if it fills.
+    private synchronized void append(Event event,
+                                     long car,
+                                     int level,
+                                     int resource) {
+        if (failed) return;
+        if (buffer.remaining() < RECORD_SIZE) write();
+        buffer.putLong(scheduler.nanoTime() - start);
+        buffer.putLong(car);
+        buffer.put((byte) event.ordinal());
+        buffer.put((byte) 0);
+        buffer.putShort((short) level);
+        buffer.putInt(resource);
+    }
+
+    // Writes the buffered records to the file.
+    private void write() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+        buffer.clear();
+    }
+
+    // Reports a failure to write the trace, after which it is discarded.
+    private void fail(IOException e) {
+        if (!failed) {
+            failed = true;
+            System.err.println("Tracing failed: " + e.getMessage());
+        }
+    }
+}
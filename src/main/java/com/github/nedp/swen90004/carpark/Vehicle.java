@@ -8,13 +8,37 @@ package com.github.nedp.swen90004.carpark;
  * It first waits for the source to be full and the destination to be empty.
  * Then it takes an item from the source, waits an appropriate amount of time,
  * and puts it in the destination.
+ * The source is made available again either after the item is put in the
+ * destination, or as soon as it is taken; see Protocol.
  *
  * The class is generic because it can be for free, but in the swen90004 carpark
  * simulation, T is always Car.
  *
  * See the implemented interface for documentation on overridden methods.
  */
-class Vehicle<T> extends Thread {
+class Vehicle<T> implements Runnable {
+
+    /**
+     * The ways in which a Vehicle may release its source.
+     *
+     * Either way, the vehicle acquires its destination before its source is
+     * released, so no cycle of vehicles can wait for each other; see
+     * lift_fixed.lts.
+     */
+    enum Protocol {
+        /**
+         * Release the source after putting the item in the destination,
+         * so the source stays blocked for the whole tow.
+         */
+        STRICT,
+        /**
+         * Release the source as soon as the item is taken from it, so the
+         * source can be refilled while the item is being towed, and
+         * adjacent vehicles tow at the same time.
+         */
+        PIPELINED;
+    }
+
     // The id should uniquely identify a Vehicle, assist debugging.
     private final String id;
 
@@ -23,8 +47,25 @@ class Vehicle<T> extends Thread {
     private final ResourceExit<T> source;
     private final ResourceEntry<T> destination;
 
+    // When the vehicle releases its source.
+    private final Protocol protocol;
+
     // Between taking an item and giving it away, the item is stored here.
-    private T item = null;
+    // It is observable state, which is only changed together with the
+    // source or destination's state.
+    private volatile T item = null;
+
+    // Used for delaying the vehicle while it tows.
+    private final Scheduler scheduler;
+
+    // Determines how long the vehicle takes to tow.
+    private final Param param;
+
+    // Versions the observable state of the car park.
+    // Each item moves from the source to this vehicle, and from this
+    // vehicle to the destination, in a single change, so that observers never
+    // see it in both places or in neither.
+    private final Version version;
 
     /**
      * Constructs a new Vehicle with a String id.
@@ -33,24 +74,47 @@ class Vehicle<T> extends Thread {
      * @param source the ResourceExit from which this vehicle will take items.
      * @param destination the ResourceEntry into which this vehicle will place
      *                    items.
+     * @param protocol when the vehicle releases its source.
+     * @param param the Param determining how long the vehicle takes to tow.
+     * @param scheduler the Scheduler used to delay the vehicle while it tows.
+     * @param version the version of the observable state of the car park,
+     *                which the vehicle changes whenever it moves an item.
      */
-    Vehicle(String id, ResourceExit<T> source, ResourceEntry<T> destination) {
+    Vehicle(String id,
+            ResourceExit<T> source,
+            ResourceEntry<T> destination,
+            Protocol protocol,
+            Param param,
+            Scheduler scheduler,
+            Version version) {
         this.id = id;
         this.source = source;
         this.destination = destination;
+        this.protocol = protocol;
+        this.param = param;
+        this.scheduler = scheduler;
+        this.version = version;
     }
 
     /**
      * Constructs a new Vehicle with an int id.
      *
      * All parameters are as defined in
-     * {@link Vehicle(String, ResourceExit, ResourceEntry)}, except:
+     * {@link Vehicle(String, ResourceExit, ResourceEntry, Protocol, Param,
+     * Scheduler, Version)}, except:
      *
      * @param id the integer which identifies this vehicle, which will be
      *           converted to a string.
      */
-    Vehicle(int id, ResourceExit<T> source, ResourceEntry<T> destination) {
-        this(Integer.toString(id), source, destination);
+    Vehicle(int id,
+            ResourceExit<T> source,
+            ResourceEntry<T> destination,
+            Protocol protocol,
+            Param param,
+            Scheduler scheduler,
+            Version version) {
+        this(Integer.toString(id), source, destination, protocol, param,
+                scheduler, version);
     }
 
     @Override
@@ -66,19 +130,25 @@ class Vehicle<T> extends Thread {
         // * Wait for the source to be full, taking ownership of its item.
         // * Wait for the destination to be full, taking ownership of its space.
         // * Remove the item from the source, while maintaining ownership.
+        // * If pipelined, release ownership of the source straight away.
         // * Sleep for the time it takes to tow the item.
         // * Place the item in the destination, releasing ownership of the
         //   no-longer-empty destination..
-        // * Release ownership of the source by telling it that it is available.
+        // * If strict, release ownership of the source by telling it that it
+        //   is available.
         while (true) {
             try {
                 source.acquireWhenFull();
                 destination.acquireWhenEmpty();
-                item = source.getNow();
-                sleep(Param.TOWING_TIME);
-                destination.put(item);
-                item = null;
-                source.makeAvailable();
+                take();
+                if (protocol == Protocol.PIPELINED) {
+                    source.makeAvailable();
+                }
+                scheduler.sleep(param.towingTime);
+                give();
+                if (protocol == Protocol.STRICT) {
+                    source.makeAvailable();
+                }
             } catch (InterruptedException e) {
                 throw new RuntimeException(String.format(
                         "Vehicle %s stopped; it was interrupted!", id), e);
@@ -86,8 +156,39 @@ class Vehicle<T> extends Thread {
         }
     }
 
-    /** Returns a human readable representation of the state of the vehicle. */
-    String state() {
-        return String.format("%6s", (item == null) ? "" : item);
+    // Takes the item from the source, as a single change to the observable
+    // state.
+    private void take() {
+        version.beginWrite();
+        try {
+            item = source.getNow();
+        } finally {
+            version.endWrite();
+        }
+    }
+
+    // Gives the item to the destination, as a single change to the
+    // observable state.
+    // No change may wait, or snapshots would be inconsistent until it ended;
+    // putting never waits here, because the vehicle owns the destination
+    // and every ResourceEntry respects ownership without waiting.
+    private void give() throws InterruptedException {
+        version.beginWrite();
+        try {
+            destination.put(item);
+            item = null;
+        } finally {
+            version.endWrite();
+        }
+    }
+
+    /**
+     * Returns the item the vehicle is towing, or null if it isn't towing one.
+     *
+     * This is observable state, which may be read by any thread; see
+     * Version.
+     */
+    T item() {
+        return item;
     }
 }
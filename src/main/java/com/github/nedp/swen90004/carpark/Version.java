@@ -0,0 +1,56 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The version of the observable state of a car park, which lets observers
+ * read the state of many components consistently without locking them.
+ *
+ * This is a seqlock which allows many writers at once.
+ * Every change to observable state, such as a car moving from a section to
+ * a vehicle, is made between {@link #beginWrite()} and {@link #endWrite()},
+ * which never wait.
+ * An observer reads the version with {@link #read()}, reads the state it
+ * needs, then checks with {@link #validate(long)} that no change began in
+ * the meantime; if one did, it must read the state again.
+ *
+ * Observable state must be held in volatile fields, so that the version and
+ * the state are read in the order they are written.
+ */
+class Version {
+
+    // The number of changes which have begun, and which have ended.
+    // Changes end after they begin, so ended is never more than begun, and
+    // they are equal exactly when no change is in progress.
+    private final AtomicLong begun = new AtomicLong(0);
+    private final AtomicLong ended = new AtomicLong(0);
+
+    /** Begins a change to the observable state. */
+    void beginWrite() {
+        begun.incrementAndGet();
+    }
+
+    /** Ends a change begun by {@link #beginWrite()}. */
+    void endWrite() {
+        ended.incrementAndGet();
+    }
+
+    /**
+     * Returns the current version, or -1 if a change is in progress, in which
+     * case the state must not be read yet.
+     */
+    long read() {
+        // Read ended first, since it can only catch up with begun.
+        final long ended = this.ended.get();
+        final long begun = this.begun.get();
+        return (begun == ended) ? begun : -1;
+    }
+
+    /**
+     * Returns true if no change has begun since the specified version was
+     * read, so that the state read since then is consistent.
+     */
+    boolean validate(long version) {
+        return version >= 0 && begun.get() == version;
+    }
+}
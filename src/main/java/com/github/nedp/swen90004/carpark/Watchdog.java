@@ -0,0 +1,456 @@
+package com.github.nedp.swen90004.carpark;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A Scheduler which watches the processes of another Scheduler for
+ * deadlock and starvation, which the LTSA models only rule out for the
+ * smallest car parks.
+ *
+ * Responsible for:
+ * <ul>
+ *     <li>tracking which process (vehicle, operator, ...) is waiting on
+ *     which Channel, including the channels through which the lift is
+ *     reserved</li>
+ *     <li>learning which processes may wake the waiters of each channel</li>
+ *     <li>periodically building a wait-for graph from these, and reporting
+ *     deadlocked processes, with a cycle among them and their stacks</li>
+ *     <li>reporting processes which have waited for longer than allowed
+ *     while the rest of the car park kept going</li>
+ * </ul>
+ *
+ * Every channel provided by the watched scheduler is wrapped; waiting is
+ * only recorded when an operation can't complete at once, so the cost of
+ * watching is a thread-local lookup per operation.
+ * A process waiting to get from a channel waits for the processes which
+ * have put into it, and vice versa; these are learned as the simulation
+ * runs, so a process which has never used a channel is not considered able
+ * to wake its waiters.
+ * A set of waiting processes is deadlocked when every process which could
+ * wake any of them is in the set too, or is only polling, and nothing in
+ * the set has changed for a whole interval.
+ * A process is only polling if it has slept since the graph was last
+ * built, without completing any channel operation.
+ *
+ * The graph is built by a daemon thread every interval of real time, so
+ * the watchdog is intended for real time runs; a discrete-event simulation
+ * already finishes as soon as it deadlocks.
+ * Reports are printed to the specified stream.
+ *
+ * See the implemented interface for documentation on overridden methods.
+ */
+class Watchdog implements Scheduler {
+
+    // The watched scheduler.
+    private final Scheduler scheduler;
+
+    // How long a process may wait before it is reported, in milliseconds;
+    // the graph is built twice as often.
+    private final long patience;
+
+    // Where reports are printed.
+    private final PrintStream out;
+
+    // Every process started so far, and the process of the calling thread,
+    // which is null for threads which are not processes, such as the one
+    // building the car park.
+    private final List<Process> processes = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Process> self = new ThreadLocal<>();
+
+    // The number of channels created so far, which identifies each channel.
+    private final AtomicInteger channels = new AtomicInteger();
+
+    // The deadlocked processes found by the previous scan, with when each
+    // started waiting, and whether they have been reported.
+    // Only accessed by the scanning thread.
+    private Map<Process, Long> deadlocked = new HashMap<>();
+    private boolean reported = false;
+
+    // The number of operations each process had completed, and the time,
+    // at the previous scan.
+    // Only accessed by the scanning thread.
+    private Map<Process, Long> progress = new HashMap<>();
+    private long scanned = 0;
+
+    /**
+     * Constructs a watchdog of the specified scheduler.
+     *
+     * @param scheduler the scheduler to watch.
+     * @param patience the number of milliseconds a process may wait before
+     *                 it is reported as starved, which must be positive.
+     * @param out the stream to which reports are printed.
+     */
+    Watchdog(Scheduler scheduler, long patience, PrintStream out) {
+        if (patience <= 0) {
+            throw new IllegalArgumentException(
+                    "The watchdog's patience must be positive");
+        }
+        this.scheduler = scheduler;
+        this.patience = patience;
+        this.out = out;
+    }
+
+    @Override
+    public long now() {
+        return scheduler.now();
+    }
+
+    @Override
+    public long nanoTime() {
+        return scheduler.nanoTime();
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        final Process process = self.get();
+        if (process == null) {
+            scheduler.sleep(millis);
+            return;
+        }
+        process.sleeping = System.nanoTime();
+        try {
+            scheduler.sleep(millis);
+        } finally {
+            process.sleeping = 0;
+        }
+    }
+
+    @Override
+    public <T> Channel<T> newChannel() {
+        return new WatchedChannel<>(scheduler.newChannel(),
+                channels.getAndIncrement(), creator());
+    }
+
+    @Override
+    public void start(String name, Runnable process) {
+        scheduler.start(name, () -> {
+            final Process p = new Process(name, Thread.currentThread());
+            processes.add(p);
+            self.set(p);
+            process.run();
+        });
+    }
+
+    /**
+     * Builds the wait-for graph every half of the patience until the
+     * simulation has finished, then waits for the watched scheduler to
+     * stop all of its processes.
+     */
+    @Override
+    public void awaitTermination() throws InterruptedException {
+        final Thread scanner = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(Math.max(1, patience / 2));
+                } catch (InterruptedException e) {
+                    return;
+                }
+                scan();
+            }
+        }, "watchdog");
+        scanner.setDaemon(true);
+        scanner.start();
+        try {
+            scheduler.awaitTermination();
+        } finally {
+            scanner.interrupt();
+        }
+    }
+
+    // Returns the place in the car park's code where a channel is being
+    // created, for identifying the channel in reports.
+    private static String creator() {
+        final StringBuilder creator = new StringBuilder();
+        for (final StackTraceElement frame : new Throwable().getStackTrace()) {
+            if (frame.getClassName().equals(Watchdog.class.getName())) {
+                continue;
+            }
+            if (creator.length() > 0) {
+                return creator.append(" via ").append(frame).toString();
+            }
+            creator.append(frame);
+        }
+        return creator.toString();
+    }
+
+    // Builds the wait-for graph, and reports any deadlock which has lasted
+    // a whole interval, and any process which has waited for too long.
+    private void scan() {
+        final long now = System.nanoTime();
+        final Map<Process, Set<Process>> graph = graph();
+
+        // Processes which aren't waiting may still wake the waiters, unless
+        // they are only polling, like an Operator checking a lift which
+        // never becomes empty: they have completed no operation since the
+        // previous scan, and have slept since then.
+        final Set<Process> live = new HashSet<>();
+        final Map<Process, Long> progress = new HashMap<>();
+        for (final Process process : processes) {
+            final long sleeping = process.sleeping;
+            progress.put(process, process.progress);
+            if (graph.containsKey(process)) continue;
+            if (process.progress != this.progress.getOrDefault(process, -1L)
+                    || sleeping == 0 || sleeping < scanned) {
+                live.add(process);
+            }
+        }
+        this.progress = progress;
+        scanned = now;
+
+        // Find the largest set of waiting processes which can only be woken
+        // by each other or by polling processes, by removing processes
+        // which may be woken by other processes until there are none.
+        final Set<Process> deadlocked = new HashSet<>(graph.keySet());
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (final Process process : new ArrayList<>(deadlocked)) {
+                final Set<Process> wakers = graph.get(process);
+                boolean woken = wakers.isEmpty();
+                for (final Process waker : wakers) {
+                    woken = woken || live.contains(waker)
+                            || (graph.containsKey(waker)
+                                    && !deadlocked.contains(waker));
+                }
+                if (woken) {
+                    deadlocked.remove(process);
+                    changed = true;
+                }
+            }
+        }
+
+        // Only report a deadlock once nothing in it has changed since the
+        // previous scan, since a process may be woken between being seen
+        // waiting and its waker being seen waiting.
+        final Map<Process, Long> since = new HashMap<>();
+        for (final Process process : deadlocked) {
+            since.put(process, process.since);
+        }
+        if (!since.equals(this.deadlocked)) {
+            reported = false;
+        } else if (!deadlocked.isEmpty() && !reported) {
+            reportDeadlock(deadlocked, graph);
+            reported = true;
+        }
+        this.deadlocked = since;
+
+        for (final Process process : graph.keySet()) {
+            final long waited = TimeUnit.NANOSECONDS.toMillis(
+                    now - process.since);
+            if (deadlocked.contains(process) || process.starved
+                    || waited < patience) {
+                continue;
+            }
+            process.starved = true;
+            out.printf("Watchdog: %s has waited %d ms %s%n",
+                    process, waited, process.waiting());
+            dump(process);
+        }
+    }
+
+    // Returns the wait-for graph: every waiting process, and the processes
+    // which may wake it.
+    private Map<Process, Set<Process>> graph() {
+        final Map<Process, Set<Process>> graph = new HashMap<>();
+        for (final Process process : processes) {
+            final WatchedChannel<?> channel = process.channel;
+            if (channel == null) continue;
+            final Set<Process> wakers = new HashSet<>(
+                    process.getting ? channel.putters : channel.getters);
+            wakers.remove(process);
+            graph.put(process, wakers);
+        }
+        return graph;
+    }
+
+    // Reports a set of deadlocked processes, showing a cycle among them
+    // and each of their stacks.
+    private void reportDeadlock(Set<Process> deadlocked,
+                                Map<Process, Set<Process>> graph) {
+        out.printf("Watchdog: %d processes are deadlocked, including "
+                + "these, each of which may only be woken by the next:%n",
+                deadlocked.size());
+
+        // Follow the wakers in the set from any process, until they come
+        // back around, or only polling processes could wake the last.
+        final List<Process> path = new ArrayList<>();
+        Process process = deadlocked.iterator().next();
+        while (process != null && !path.contains(process)) {
+            path.add(process);
+            out.printf("  %s waits %s%n", process, process.waiting());
+            Process next = null;
+            for (final Process waker : graph.get(process)) {
+                if (deadlocked.contains(waker)) next = waker;
+            }
+            if (next == null) {
+                out.printf("  ... which only %s may wake, but they are "
+                        + "making no progress%n", graph.get(process));
+            }
+            process = next;
+        }
+        if (process != null) {
+            out.printf("  ... and %s again%n", process);
+        }
+        for (final Process waiter : deadlocked) {
+            dump(waiter);
+        }
+    }
+
+    // Prints the stack of a process's thread.
+    private void dump(Process process) {
+        out.printf("\"%s\"%n", process);
+        for (final StackTraceElement frame : process.thread.getStackTrace()) {
+            out.printf("\tat %s%n", frame);
+        }
+    }
+
+    // A process started by the watched scheduler, and the channel it is
+    // waiting on, if any.
+    private static final class Process {
+        private final String name;
+        private final Thread thread;
+
+        // The channel the process is waiting on, or null if it isn't
+        // waiting; whether it is waiting to get from it rather than put
+        // into it; and when it started waiting, in System#nanoTime.
+        // Only changed by the process, but read by the scanning thread.
+        private volatile WatchedChannel<?> channel = null;
+        private volatile boolean getting = false;
+        private volatile long since = 0;
+
+        // The number of operations the process has completed, and when it
+        // started sleeping, in System#nanoTime, or 0 if it isn't sleeping.
+        // Only changed by the process, but read by the scanning thread.
+        private volatile long progress = 0;
+        private volatile long sleeping = 0;
+
+        // Whether the process has been reported for its current wait.
+        // Only accessed by the scanning thread, except when the process
+        // starts waiting again.
+        private volatile boolean starved = false;
+
+        private Process(String name, Thread thread) {
+            this.name = name;
+            this.thread = thread;
+        }
+
+        // Describes what the process is waiting for.
+        private String waiting() {
+            return String.format("to %s %s",
+                    getting ? "get from" : "put into", channel);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * A Channel which records the processes waiting on it and the processes
+     * which have used it, around a channel of the watched scheduler.
+     *
+     * See the implemented interface for documentation on overridden methods.
+     */
+    private final class WatchedChannel<T> implements Channel<T> {
+        private final Channel<T> channel;
+        private final String name;
+
+        // The processes which have gotten from and put into the channel.
+        private final Set<Process> getters = ConcurrentHashMap.newKeySet();
+        private final Set<Process> putters = ConcurrentHashMap.newKeySet();
+
+        private WatchedChannel(Channel<T> channel, int id, String creator) {
+            this.channel = channel;
+            this.name = String.format("channel %d (created at %s)",
+                    id, creator);
+        }
+
+        @Override
+        public T get() throws InterruptedException {
+            final Optional<T> ready = getIfReady();
+            if (ready.isPresent()) return ready.get();
+            final Process process = await(true);
+            try {
+                final T item = channel.get();
+                used(getters, process);
+                return item;
+            } finally {
+                resume(process);
+            }
+        }
+
+        @Override
+        public void put(T item) throws InterruptedException {
+            if (putIfEmpty(item)) return;
+            final Process process = await(false);
+            try {
+                channel.put(item);
+                used(putters, process);
+            } finally {
+                resume(process);
+            }
+        }
+
+        @Override
+        public Optional<T> getIfReady() {
+            final Optional<T> item = channel.getIfReady();
+            if (item.isPresent()) {
+                used(getters, self.get());
+            }
+            return item;
+        }
+
+        @Override
+        public boolean putIfEmpty(T item) {
+            if (!channel.putIfEmpty(item)) return false;
+            used(putters, self.get());
+            return true;
+        }
+
+        // Records that the calling process is about to wait on this
+        // channel, and returns it, or null if the caller isn't a process.
+        private Process await(boolean getting) {
+            final Process process = self.get();
+            if (process == null) return null;
+            process.getting = getting;
+            process.since = System.nanoTime();
+            process.starved = false;
+            process.channel = this;
+            return process;
+        }
+
+        // Records that the specified process is no longer waiting.
+        private void resume(Process process) {
+            if (process != null) {
+                process.channel = null;
+            }
+        }
+
+        // Records that the specified process has used this channel, unless
+        // the caller isn't a process.
+        private void used(Set<Process> users, Process process) {
+            if (process == null) return;
+            process.progress += 1;
+            if (!users.contains(process)) {
+                users.add(process);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.nedp.swen90004.carpark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.junit.Test;
+
+/**
+ * Checks that an AtomicChannel passes every item exactly once between many
+ * threads, without losing a wake up.
+ */
+public class AtomicChannelTest {
+
+    // The number of threads on each side, and the items each sends.
+    private static final int THREADS = 4;
+    private static final int ITEMS = 20000;
+
+    // How long the threads may take before a wake up is considered lost.
+    private static final long TIMEOUT_SECONDS = 60;
+
+    @Test
+    public void emptyChannelHasNothingToGet() {
+        final Channel<Integer> channel = new AtomicChannel<>();
+        assertFalse(channel.getIfReady().isPresent());
+        assertTrue(channel.putIfEmpty(1));
+        assertFalse(channel.putIfEmpty(2));
+        assertEquals(Optional.of(1), channel.getIfReady());
+        assertFalse(channel.getIfReady().isPresent());
+    }
+
+    @Test
+    public void waitingThreadsPassEveryItemOnce() throws Exception {
+        assertEveryItemPassedOnce(false);
+    }
+
+    @Test
+    public void mixedThreadsPassEveryItemOnce() throws Exception {
+        assertEveryItemPassedOnce(true);
+    }
+
+    // Sends every item through a single channel from several threads to
+    // several others, and checks that each is received exactly once.
+    // If mixed, half of the threads on each side poll without waiting.
+    private static void assertEveryItemPassedOnce(boolean mixed)
+            throws Exception {
+        final Channel<Integer> channel = new AtomicChannel<>();
+        final AtomicIntegerArray received =
+                new AtomicIntegerArray(THREADS * ITEMS);
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < THREADS; i += 1) {
+            final int sender = i;
+            final boolean polls = mixed && i % 2 == 1;
+            tasks.add(() -> {
+                for (int j = 0; j < ITEMS; j += 1) {
+                    final int item = sender * ITEMS + j;
+                    if (polls) {
+                        while (!channel.putIfEmpty(item)) {
+                            Thread.yield();
+                        }
+                    } else {
+                        channel.put(item);
+                    }
+                }
+                return null;
+            });
+            tasks.add(() -> {
+                for (int j = 0; j < ITEMS; j += 1) {
+                    final int item;
+                    if (polls) {
+                        Optional<Integer> ready;
+                        while (!(ready = channel.getIfReady()).isPresent()) {
+                            Thread.yield();
+                        }
+                        item = ready.get();
+                    } else {
+                        item = channel.get();
+                    }
+                    received.incrementAndGet(item);
+                }
+                return null;
+            });
+        }
+
+        final ExecutorService executor =
+                Executors.newFixedThreadPool(tasks.size());
+        try {
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (final Callable<Void> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (final Future<Void> future : futures) {
+                future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        for (int i = 0; i < received.length(); i += 1) {
+            assertEquals("item " + i, 1, received.get(i));
+        }
+        assertFalse(channel.getIfReady().isPresent());
+    }
+}
@@ -0,0 +1,142 @@
+package com.github.nedp.swen90004.carpark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks that a Lane passes every car through exactly once, in order, while
+ * several vehicles race to claim each end of it, as in a Fleet.
+ */
+public class LaneTest {
+
+    // The number of bays, the number of vehicles at each end, and the
+    // number of cars each vehicle at the tail puts in.
+    private static final int CAPACITY = 2;
+    private static final int VEHICLES = 3;
+    private static final int CARS = 10000;
+
+    // How long the vehicles may take before the lane is considered stuck.
+    private static final long TIMEOUT_SECONDS = 60;
+
+    @BeforeClass
+    public static void silenceLogger() {
+        Logger.setLogType(Logger.LogType.NONE);
+    }
+
+    @Test
+    public void ownersPassCarsInOrder() throws Exception {
+        final Lane lane = new Lane(0, CAPACITY,
+                new ThreadScheduler(ThreadScheduler.ChannelType.MONITOR));
+        final List<Car> cars = new ArrayList<>();
+        for (int i = 0; i < CARS; i += 1) {
+            cars.add(Car.getNew());
+        }
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        tasks.add(() -> {
+            for (final Car car : cars) {
+                lane.acquireWhenEmpty();
+                lane.put(car);
+            }
+            return null;
+        });
+        tasks.add(() -> {
+            for (final Car car : cars) {
+                lane.acquireWhenFull();
+                assertEquals(car, lane.getNow());
+                lane.makeAvailable();
+            }
+            return null;
+        });
+        runAll(tasks);
+    }
+
+    @Test
+    public void racingMonitorVehiclesPassEveryCarOnce() throws Exception {
+        assertEveryCarPassedOnce(ThreadScheduler.ChannelType.MONITOR);
+    }
+
+    @Test
+    public void racingAtomicVehiclesPassEveryCarOnce() throws Exception {
+        assertEveryCarPassedOnce(ThreadScheduler.ChannelType.ATOMIC);
+    }
+
+    // Has several vehicles claim the tail of a lane without waiting to put
+    // cars in, and several claim the head to take them out, while another
+    // repeatedly waits until the lane is free, and checks that every car
+    // comes out exactly once.
+    private static void assertEveryCarPassedOnce(
+            ThreadScheduler.ChannelType channelType) throws Exception {
+        final Lane lane = new Lane(0, CAPACITY,
+                new ThreadScheduler(channelType));
+        final int total = VEHICLES * CARS;
+        final Set<Car> gotten = ConcurrentHashMap.newKeySet();
+        final AtomicInteger remaining = new AtomicInteger(total);
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < VEHICLES; i += 1) {
+            tasks.add(() -> {
+                for (int j = 0; j < CARS; j += 1) {
+                    while (!lane.acquireIfEmpty()) {
+                        Thread.yield();
+                    }
+                    lane.put(Car.getNew());
+                }
+                return null;
+            });
+            tasks.add(() -> {
+                while (remaining.get() > 0) {
+                    if (!lane.acquireIfFull()) {
+                        Thread.yield();
+                        continue;
+                    }
+                    final Car car = lane.getNow();
+                    lane.makeAvailable();
+                    assertNotNull("a claimed bay was empty", car);
+                    assertTrue("a car was gotten twice", gotten.add(car));
+                    remaining.decrementAndGet();
+                }
+                return null;
+            });
+        }
+        tasks.add(() -> {
+            while (remaining.get() > 0) {
+                lane.waitUntilFree();
+                Thread.yield();
+            }
+            return null;
+        });
+        runAll(tasks);
+        assertEquals(total, gotten.size());
+    }
+
+    // Runs the tasks in their own threads, failing if any throws or they
+    // take too long.
+    private static void runAll(List<Callable<Void>> tasks) throws Exception {
+        final ExecutorService executor =
+                Executors.newFixedThreadPool(tasks.size());
+        try {
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (final Callable<Void> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (final Future<Void> future : futures) {
+                future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.github.nedp.swen90004.carpark;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Checks that a LogBuffer writes every record from many threads exactly
+ * once and in order, and leaves the records' arguments alone.
+ */
+public class LogBufferTest {
+
+    // The number of producing threads, and the records each logs; together
+    // they log more records than the buffer can hold at once.
+    private static final int PRODUCERS = 4;
+    private static final int RECORDS = 10000;
+
+    // How long the producers may take before the buffer is considered stuck.
+    private static final long TIMEOUT_SECONDS = 60;
+
+    @Test
+    public void producersRecordsAreWrittenOnceInOrder() throws Exception {
+        final StringWriter out = new StringWriter();
+        final LogBuffer buffer = new LogBuffer(out);
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < PRODUCERS; i += 1) {
+            final int producer = i;
+            tasks.add(() -> {
+                for (int j = 0; j < RECORDS; j += 1) {
+                    // Alternate between inline and array arguments.
+                    if (j % 2 == 0) {
+                        assertTrue(buffer.log("%d %d", true, 2,
+                                producer, j, null, null));
+                    } else {
+                        assertTrue(buffer.log("%d %d", true, -1,
+                                null, null, null, new Object[]{producer, j}));
+                    }
+                }
+                return null;
+            });
+        }
+
+        final ExecutorService executor =
+                Executors.newFixedThreadPool(tasks.size());
+        try {
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (final Callable<Void> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (final Future<Void> future : futures) {
+                future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        buffer.stop();
+
+        final int[] next = new int[PRODUCERS];
+        final String[] lines = out.toString().split("\n");
+        assertEquals(PRODUCERS * RECORDS, lines.length);
+        for (final String line : lines) {
+            final String[] fields = line.split(" ");
+            final int producer = Integer.parseInt(fields[0]);
+            assertEquals("record of producer " + producer,
+                    next[producer], Integer.parseInt(fields[1]));
+            next[producer] += 1;
+        }
+        for (int i = 0; i < PRODUCERS; i += 1) {
+            assertEquals("records of producer " + i, RECORDS, next[i]);
+        }
+    }
+
+    @Test
+    public void argumentArrayIsUnchanged() {
+        final StringWriter out = new StringWriter();
+        final LogBuffer buffer = new LogBuffer(out);
+        final Object[] arguments = {1, "two", 3.0};
+        assertTrue(buffer.log("%s %s %s", true, -1,
+                null, null, null, arguments));
+        buffer.stop();
+
+        assertEquals("1 two 3.0\n", out.toString());
+        assertArrayEquals(new Object[]{1, "two", 3.0}, arguments);
+    }
+
+    @Test
+    public void stoppedBufferAcceptsNothing() {
+        final StringWriter out = new StringWriter();
+        final LogBuffer buffer = new LogBuffer(out);
+        buffer.stop();
+
+        assertFalse(buffer.log("%s", true, 1, "late", null, null, null));
+        assertEquals("", out.toString());
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.nedp.swen90004.carpark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks that snapshots of a car park running in real time are consistent,
+ * which requires that no process waits while changing the observable
+ * state; see Version.
+ */
+public class SnapshotTest {
+
+    // How long to watch each car park for.
+    private static final long DURATION_MILLIS = 2000;
+
+    @BeforeClass
+    public static void silenceLogger() {
+        Logger.setLogType(Logger.LogType.NONE);
+    }
+
+    @Test
+    public void snapshotsOfOneLiftAreConsistent() throws Exception {
+        assertConsistent("--lifts=1");
+    }
+
+    @Test
+    public void snapshotsOfSeveralLiftsAreConsistent() throws Exception {
+        assertConsistent("--lifts=3");
+    }
+
+    @Test
+    public void snapshotsOfBatchedTripsAreConsistent() throws Exception {
+        assertConsistent("--lift.capacity=2", "--lift.dwell=10",
+                "--section.capacity=2");
+    }
+
+    @Test
+    public void snapshotsOfAFleetAreConsistent() throws Exception {
+        assertConsistent("--lifts=3", "--fleet=2");
+    }
+
+    // Runs a busy car park with the specified extra flags, taking snapshots
+    // as fast as possible, and checks that every one is consistent.
+    private static void assertConsistent(String... flags) throws Exception {
+        final List<String> args = new ArrayList<>();
+        args.add("--operate.time=20");
+        args.add("--towing.time=30");
+        args.add("--max.arrive.interval=20");
+        args.add("--max.depart.interval=400");
+        for (final String flag : flags) {
+            args.add(flag);
+        }
+        final Param param = Param.load(args.toArray(new String[0]));
+        final Scheduler scheduler =
+                new ThreadScheduler(ThreadScheduler.ChannelType.MONITOR);
+        final CarPark carPark = new Topology(param, scheduler).build();
+        carPark.start();
+
+        int taken = 0;
+        int inconsistent = 0;
+        final long end = System.currentTimeMillis() + DURATION_MILLIS;
+        try {
+            while (System.currentTimeMillis() < end) {
+                if (!carPark.snapshot().isConsistent()) {
+                    inconsistent += 1;
+                }
+                taken += 1;
+            }
+        } finally {
+            // A process which returns ends the car park.
+            scheduler.start("stop", () -> { });
+            scheduler.awaitTermination();
+        }
+        assertTrue("no snapshots were taken", taken > 0);
+        assertEquals(String.format("inconsistent snapshots of %d", taken),
+                0, inconsistent);
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.nedp.swen90004.carpark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.Test;
+
+/**
+ * Checks that a Version lets readers tell when state which is changed by
+ * several writers at once was read consistently.
+ */
+public class VersionTest {
+
+    // The number of writers and readers, and how long they run for.
+    private static final int WRITERS = 3;
+    private static final int READERS = 2;
+    private static final long DURATION_MILLIS = 1000;
+
+    // How long each writer pauses between its changes.
+    private static final long WRITER_PAUSE_NANOS = 10000;
+
+    // Two pieces of observable state, which every change keeps equal.
+    private volatile long left = 0;
+    private volatile long right = 0;
+
+    @Test
+    public void validatedReadsAreConsistent() throws Exception {
+        final Version version = new Version();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong validated = new AtomicLong();
+        final AtomicLong torn = new AtomicLong();
+        final Thread[] threads = new Thread[WRITERS + READERS];
+        for (int i = 0; i < WRITERS; i += 1) {
+            threads[i] = new Thread(() -> {
+                while (running.get()) {
+                    version.beginWrite();
+                    synchronized (this) {
+                        left += 1;
+                        Thread.yield();
+                        right += 1;
+                    }
+                    version.endWrite();
+
+                    // Leave gaps between changes, as a car park does, so
+                    // that readers can succeed.
+                    LockSupport.parkNanos(WRITER_PAUSE_NANOS);
+                }
+            });
+        }
+        for (int i = WRITERS; i < threads.length; i += 1) {
+            threads[i] = new Thread(() -> {
+                while (running.get()) {
+                    final long read = version.read();
+                    if (read < 0) continue;
+                    final long right = this.right;
+                    final long left = this.left;
+                    if (!version.validate(read)) continue;
+                    validated.incrementAndGet();
+                    if (left != right) {
+                        torn.incrementAndGet();
+                    }
+                }
+            });
+        }
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(DURATION_MILLIS);
+        running.set(false);
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue("no reads were validated", validated.get() > 0);
+        assertEquals("torn reads which were validated", 0, torn.get());
+    }
+
+    @Test
+    public void readDuringWriteIsInvalid() {
+        final Version version = new Version();
+        final long before = version.read();
+        assertTrue(version.validate(before));
+        version.beginWrite();
+        assertEquals(-1, version.read());
+        assertFalse(version.validate(before));
+        version.endWrite();
+        assertTrue(version.validate(version.read()));
+        assertFalse(version.validate(before));
+    }
+}